@@ -0,0 +1,199 @@
+package ru.practicum.stats.client;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import ru.practicum.stats.dto.EndpointHitDto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Отправляет обращения в фоне пачками через POST /hits: по достижении batch-size
+ * или раз в flush-interval. Очередь без блокировок, размер ограничен счётчиком capacity.
+ * Если включён {@link HitSpool}, неотправленные пачки уходят в него.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.async.enabled", havingValue = "true")
+public class AsyncHitSender {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncHitSender.class);
+
+    private static final long BLOCK_PARK_NANOS = 100_000;
+
+    private final RestClient restClient;
+    private final Queue<EndpointHitDto> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final int capacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+    private final Duration shutdownTimeout;
+    private final Optional<HitSpool> spool;
+    private final Thread sender;
+
+    private volatile boolean running;
+
+    public AsyncHitSender(RestClient restClient,
+                          Optional<HitSpool> spool,
+                          @Value("${stats-server.async.capacity:10000}") int capacity,
+                          @Value("${stats-server.async.batch-size:500}") int batchSize,
+                          @Value("${stats-server.async.flush-interval:200ms}") Duration flushInterval,
+                          @Value("${stats-server.async.overflow:DROP}") OverflowPolicy overflowPolicy,
+                          @Value("${stats-server.async.block-timeout:50ms}") Duration blockTimeout,
+                          @Value("${stats-server.async.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.restClient = restClient;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.spool = spool;
+        if (overflowPolicy == OverflowPolicy.SPILL && spool.isEmpty()) {
+            throw new IllegalStateException("Overflow policy SPILL requires stats-server.spool.enabled=true");
+        }
+        this.sender = new Thread(this::run, "stats-hit-sender");
+        this.sender.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        sender.start();
+        log.info("Асинхронная отправка обращений включена: batchSize={}, flushInterval={}, overflow={}",
+                batchSize, flushInterval, overflowPolicy);
+    }
+
+    /**
+     * Ставит обращение в очередь; при переполнении действует по {@link OverflowPolicy}.
+     */
+    public void send(EndpointHitDto hit) {
+        if (tryEnqueue(hit)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                long deadline = System.nanoTime() + blockTimeout.toNanos();
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    if (tryEnqueue(hit)) {
+                        return;
+                    }
+                }
+                dropped.incrementAndGet();
+            }
+            case SPILL -> {
+                if (!spool.get().append(hit)) {
+                    dropped.incrementAndGet();
+                }
+            }
+            default -> dropped.incrementAndGet();
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(sender);
+        sender.join(shutdownTimeout.toMillis());
+        if (size.get() > 0) {
+            log.warn("Не удалось отправить {} обращений при остановке", size.get());
+        }
+    }
+
+    private boolean tryEnqueue(EndpointHitDto hit) {
+        if (!running) {
+            return false;
+        }
+        int current = size.incrementAndGet();
+        if (current > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        queue.offer(hit);
+        if (current == batchSize) {
+            LockSupport.unpark(sender);
+        }
+        return true;
+    }
+
+    private void run() {
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        while (running || size.get() > 0) {
+            if (size.get() < batchSize && running) {
+                LockSupport.parkNanos(flushInterval.toNanos());
+            }
+            EndpointHitDto hit;
+            while ((hit = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(hit);
+                if (batch.size() == batchSize) {
+                    deliver(batch);
+                }
+            }
+            deliver(batch);
+        }
+    }
+
+    private void deliver(List<EndpointHitDto> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!post(batch)) {
+            for (EndpointHitDto hit : batch) {
+                if (spool.isEmpty() || !spool.get().append(hit)) {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    private boolean post(List<EndpointHitDto> batch) {
+        try {
+            restClient.post()
+                    .uri("/hits")
+                    .body(batch)
+                    .retrieve()
+                    .toBodilessEntity();
+            sent.addAndGet(batch.size());
+            return true;
+        } catch (Exception e) {
+            log.warn("Не удалось отправить пачку из {} обращений: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package ru.practicum.stats.client;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import ru.practicum.stats.dto.EndpointHitDto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Дисковый спул обращений, которые не удалось доставить. Запись идёт в активный сегмент без
+ * блокировок; заполненный сегмент запечатывается и сменяется новым. Фоновый поток раз в
+ * replay-interval отправляет накопленное пачками через POST /hits и удаляет дочитанные сегменты.
+ * Доставка не менее одного раза: при падении между отправкой и отметкой пачка уйдёт повторно.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true")
+public class HitSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(HitSpool.class);
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final RestClient restClient;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int batchSize;
+    private final Duration replayInterval;
+    private final AtomicReference<SpoolSegment> active = new AtomicReference<>();
+    private final Queue<SpoolSegment> sealed = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextNumber = new AtomicLong();
+    private final AtomicInteger segmentCount = new AtomicInteger();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread replayer;
+
+    private volatile boolean running;
+
+    public HitSpool(RestClient restClient,
+                    @Value("${stats-server.spool.directory:./stats-spool}") Path directory,
+                    @Value("${stats-server.spool.segment-size:8388608}") int segmentSize,
+                    @Value("${stats-server.spool.max-segments:64}") int maxSegments,
+                    @Value("${stats-server.spool.batch-size:500}") int batchSize,
+                    @Value("${stats-server.spool.replay-interval:5s}") Duration replayInterval) {
+        this.restClient = restClient;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.batchSize = batchSize;
+        this.replayInterval = replayInterval;
+        this.replayer = new Thread(this::run, "stats-hit-spool");
+        this.replayer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(HitSpool::isSegment).sorted().toList()) {
+                long number = segmentNumber(path);
+                sealed.add(SpoolSegment.open(path, number));
+                segmentCount.incrementAndGet();
+                nextNumber.set(Math.max(nextNumber.get(), number + 1));
+            }
+        }
+        active.set(newSegment());
+        running = true;
+        replayer.start();
+        log.info("Спул обращений {}: сегментов с прошлого запуска {}", directory.toAbsolutePath(), sealed.size());
+    }
+
+    /**
+     * Без блокировок; false — спул заполнен или запись на диск не удалась.
+     */
+    public boolean append(EndpointHitDto hit) {
+        byte[] payload = encode(hit);
+        if (SpoolSegment.recordSize(payload.length) > segmentSize - SpoolSegment.HEADER_SIZE) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        while (true) {
+            SpoolSegment segment = active.get();
+            if (segment.append(payload)) {
+                spooled.incrementAndGet();
+                return true;
+            }
+            if (!roll(segment)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    public long getSpooled() {
+        return spooled.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        replayer.interrupt();
+        replayer.join(replayInterval.toMillis());
+        active.get().force();
+    }
+
+    /**
+     * Меняет заполненный сегмент на новый через CAS; проигравший гонку удаляет свой файл.
+     */
+    private boolean roll(SpoolSegment full) {
+        if (active.get() != full) {
+            return true;
+        }
+        if (segmentCount.get() >= maxSegments) {
+            return false;
+        }
+        SpoolSegment next;
+        try {
+            next = newSegment();
+        } catch (IOException e) {
+            log.error("Не удалось создать сегмент спула", e);
+            return false;
+        }
+        if (active.compareAndSet(full, next)) {
+            full.seal();
+            sealed.add(full);
+            return true;
+        }
+        discard(next);
+        return true;
+    }
+
+    private SpoolSegment newSegment() throws IOException {
+        long number = nextNumber.getAndIncrement();
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        SpoolSegment segment = SpoolSegment.create(path, number, segmentSize);
+        segmentCount.incrementAndGet();
+        return segment;
+    }
+
+    private void discard(SpoolSegment segment) {
+        segmentCount.decrementAndGet();
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            log.warn("Не удалось удалить сегмент спула {}", segment.getPath(), e);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(replayInterval.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+            active.get().force();
+            replay();
+        }
+    }
+
+    private void replay() {
+        SpoolSegment segment;
+        while ((segment = sealed.peek()) != null) {
+            segment.awaitWriters();
+            if (!replay(segment)) {
+                return;
+            }
+            sealed.poll();
+            discard(segment);
+            log.debug("Спул: сегмент {} отправлен и удалён", segment.getNumber());
+        }
+        replay(active.get());
+    }
+
+    /**
+     * Отправляет записи сегмента начиная с отметки replayed; false — сервер недоступен.
+     */
+    private boolean replay(SpoolSegment segment) {
+        int offset = segment.replayed();
+        while (running) {
+            List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+            int end = offset;
+            int length;
+            while (batch.size() < batchSize && (length = segment.recordLength(end)) > 0) {
+                byte[] payload = segment.read(end, length);
+                if (payload == null) {
+                    log.error("Спул: повреждённая запись в сегменте {} по смещению {}, остаток пропущен",
+                            segment.getNumber(), end);
+                    return segment.isSealed() && sendAndMark(segment, batch, end);
+                }
+                batch.add(decode(payload));
+                end += SpoolSegment.recordSize(length);
+            }
+            if (batch.isEmpty()) {
+                return true;
+            }
+            if (!sendAndMark(segment, batch, end)) {
+                return false;
+            }
+            offset = end;
+        }
+        return false;
+    }
+
+    private boolean sendAndMark(SpoolSegment segment, List<EndpointHitDto> batch, int end) {
+        if (!batch.isEmpty()) {
+            try {
+                restClient.post()
+                        .uri("/hits")
+                        .body(batch)
+                        .retrieve()
+                        .toBodilessEntity();
+            } catch (Exception e) {
+                log.debug("Спул: сервер статистики недоступен: {}", e.getMessage());
+                return false;
+            }
+            replayed.addAndGet(batch.size());
+        }
+        segment.markReplayed(end);
+        return true;
+    }
+
+    private static byte[] encode(EndpointHitDto hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(3 * Integer.BYTES + app.length + uri.length + ip.length + Long.BYTES)
+                .putInt(app.length).put(app)
+                .putInt(uri.length).put(uri)
+                .putInt(ip.length).put(ip)
+                .putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC))
+                .array();
+    }
+
+    private static EndpointHitDto decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        return EndpointHitDto.builder()
+                .app(readString(buffer))
+                .uri(readString(buffer))
+                .ip(readString(buffer))
+                .timestamp(LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC))
+                .build();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
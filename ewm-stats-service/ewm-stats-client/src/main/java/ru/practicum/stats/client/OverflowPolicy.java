@@ -0,0 +1,19 @@
+package ru.practicum.stats.client;
+
+/**
+ * Что делать с обращением, когда очередь асинхронной отправки заполнена.
+ */
+public enum OverflowPolicy {
+    /**
+     * Отбросить обращение.
+     */
+    DROP,
+    /**
+     * Подождать свободного места не дольше block-timeout, затем отбросить.
+     */
+    BLOCK,
+    /**
+     * Записать обращение в {@link HitSpool}; требует stats-server.spool.enabled.
+     */
+    SPILL
+}
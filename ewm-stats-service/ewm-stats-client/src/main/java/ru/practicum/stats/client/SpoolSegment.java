@@ -0,0 +1,171 @@
+package ru.practicum.stats.client;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Файл спула фиксированного размера, отображённый в память.
+ * <pre>
+ * заголовок: MAGIC:int replayed:int — смещение первой неотправленной записи
+ * запись:    length:int crc32:int payload
+ * </pre>
+ * Записи выровнены по 4 байта для атомарного доступа к length.
+ * Место под запись резервируется CAS-сдвигом позиции, только если запись помещается целиком,
+ * поэтому позиция не уходит за конец сегмента. length пишется последним, и читатель видит
+ * только полностью записанные записи. Нулевая длина — конец данных.
+ */
+final class SpoolSegment {
+
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int MAGIC = 0x45574D51;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+    private final long number;
+    private final MappedByteBuffer buffer;
+    private final AtomicInteger position;
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean sealed;
+
+    private SpoolSegment(Path path, long number, MappedByteBuffer buffer, int position, boolean sealed) {
+        this.path = path;
+        this.number = number;
+        this.buffer = buffer;
+        this.position = new AtomicInteger(position);
+        this.sealed = sealed;
+    }
+
+    static SpoolSegment create(Path path, long number, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, HEADER_SIZE);
+            return new SpoolSegment(path, number, buffer, HEADER_SIZE, false);
+        }
+    }
+
+    /**
+     * Сегмент, оставшийся с прошлого запуска, открывается запечатанным: в него только дочитывают.
+     */
+    static SpoolSegment open(Path path, long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a spool segment: " + path);
+            }
+            return new SpoolSegment(path, number, buffer, buffer.capacity(), true);
+        }
+    }
+
+    /**
+     * Без блокировок; false — в сегменте не хватило места или он уже запечатан.
+     */
+    boolean append(byte[] payload) {
+        writers.incrementAndGet();
+        try {
+            if (sealed) {
+                return false;
+            }
+            int length = recordSize(payload.length);
+            int offset;
+            do {
+                offset = position.get();
+                if (offset > buffer.capacity() - length) {
+                    return false;
+                }
+            } while (!position.compareAndSet(offset, offset + length));
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.put(offset + RECORD_HEADER_SIZE, payload);
+            INT.setRelease(buffer, offset, payload.length);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    static int recordSize(int payloadLength) {
+        return (RECORD_HEADER_SIZE + payloadLength + 3) & ~3;
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Дожидается писателей, успевших зарезервировать место до запечатывания.
+     */
+    void awaitWriters() {
+        while (writers.get() > 0) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    int replayed() {
+        return buffer.getInt(4);
+    }
+
+    void markReplayed(int offset) {
+        buffer.putInt(4, offset);
+        buffer.force();
+    }
+
+    /**
+     * Длина payload записи по смещению или -1, если записи там ещё нет.
+     */
+    int recordLength(int offset) {
+        if (offset > buffer.capacity() - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+        int length = (int) INT.getAcquire(buffer, offset);
+        if (length <= 0 || length > buffer.capacity() - offset - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Payload записи или null, если контрольная сумма не сошлась.
+     */
+    byte[] read(int offset, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(offset + RECORD_HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? payload : null;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    Path getPath() {
+        return path;
+    }
+}
@@ -1,34 +1,121 @@
 package ru.practicum.stats.client;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.StatsRequestDto;
 import ru.practicum.stats.dto.ViewStatsDto;
 
 import java.time.LocalDateTime;
+import java.time.Period;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class StatsClient {
 
+    // Более длинные списки uris передаются в теле POST /stats, чтобы не упереться в длину URL
+    private static final int MAX_QUERY_URIS = 50;
+
     private final RestClient restClient;
+    private final Optional<AsyncHitSender> asyncHitSender;
+    private final Optional<HitSpool> hitSpool;
+    private final Optional<ViewCountCache> viewCountCache;
+    private final Optional<ViewLookupBatcher> viewLookupBatcher;
+    private final Period viewsLookback;
+    private final boolean approximateViews;
+    private final SingleFlight<StatsQuery, List<ViewStatsDto>> statsFlight = new SingleFlight<>();
 
-    public StatsClient(RestClient restClient) {
+    public StatsClient(RestClient restClient,
+                       Optional<AsyncHitSender> asyncHitSender,
+                       Optional<HitSpool> hitSpool,
+                       Optional<ViewCountCache> viewCountCache,
+                       Optional<ViewLookupBatcher> viewLookupBatcher,
+                       @Value("${stats-server.views.lookback:1y}") Period viewsLookback,
+                       @Value("${stats-server.approximate-views:false}") boolean approximateViews) {
         this.restClient = restClient;
+        this.asyncHitSender = asyncHitSender;
+        this.hitSpool = hitSpool;
+        this.viewCountCache = viewCountCache;
+        this.viewLookupBatcher = viewLookupBatcher;
+        this.viewsLookback = viewsLookback;
+        this.approximateViews = approximateViews;
     }
 
+    /**
+     * При stats-server.async.enabled обращение только ставится в очередь фоновой отправки.
+     * При stats-server.spool.enabled недоставленное обращение сохраняется в спул, а не теряется.
+     */
     public void addHit(EndpointHitDto endpointHitDto) {
-        restClient.post()
-                .uri("/hit")
-                .body(endpointHitDto)
-                .retrieve()
-                .toBodilessEntity();
+        if (asyncHitSender.isPresent()) {
+            asyncHitSender.get().send(endpointHitDto);
+            return;
+        }
+        try {
+            restClient.post()
+                    .uri("/hit")
+                    .body(endpointHitDto)
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (RestClientException e) {
+            if (hitSpool.isEmpty() || !hitSpool.get().append(endpointHitDto)) {
+                throw e;
+            }
+        }
+    }
+
+    public void addHits(List<EndpointHitDto> endpointHitDtos) {
+        if (endpointHitDtos.isEmpty()) {
+            return;
+        }
+        try {
+            restClient.post()
+                    .uri("/hits")
+                    .body(endpointHitDtos)
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (RestClientException e) {
+            if (hitSpool.isEmpty()) {
+                throw e;
+            }
+            for (EndpointHitDto hit : endpointHitDtos) {
+                if (!hitSpool.get().append(hit)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Просмотры uri за последние stats-server.views.lookback; uri без обращений получают ноль.
+     * При stats-server.cache.enabled ответ может отставать на fresh-ttl, а при недоступном
+     * сервере статистики — содержать последние известные значения. При stats-server.batch.enabled
+     * одновременные запросы объединяются в один вызов /stats.
+     */
+    public Map<String, Long> getViews(List<String> uris, boolean unique) {
+        if (uris.isEmpty()) {
+            return Map.of();
+        }
+        if (viewCountCache.isPresent()) {
+            return viewCountCache.get().get(uris, unique, missing -> lookupViews(missing, unique));
+        }
+        return lookupViews(uris, unique);
     }
 
     public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        return getStats(start, end, uris, unique, null);
+    }
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                       Boolean approx) {
         if (start == null || end == null) {
             throw new IllegalArgumentException("Start and end dates must be provided");
         }
@@ -37,23 +124,69 @@ public class StatsClient {
             throw new IllegalArgumentException("End date must be after start date");
         }
 
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder
-                .fromPath("/stats")
-                .queryParam("start", start.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-                .queryParam("end", end.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        // В запрос время уходит с точностью до секунд, а порядок uris на ответ не влияет
+        StatsQuery query = new StatsQuery(start.truncatedTo(ChronoUnit.SECONDS), end.truncatedTo(ChronoUnit.SECONDS),
+                uris == null ? List.of() : uris.stream().distinct().sorted().toList(),
+                Boolean.TRUE.equals(unique), Boolean.TRUE.equals(approx));
+        return statsFlight.execute(query, () -> fetchStats(query));
+    }
+
+    /**
+     * Сколько вызовов getStats получили результат чужого одновременного запроса вместо своего.
+     */
+    public long getCoalescedCalls() {
+        return statsFlight.getCoalesced();
+    }
+
+    private List<ViewStatsDto> fetchStats(StatsQuery query) {
+        List<ViewStatsDto> stats;
+        if (query.uris().size() > MAX_QUERY_URIS) {
+            stats = restClient.post()
+                    .uri("/stats")
+                    .body(new StatsRequestDto(query.start(), query.end(), query.uris(), query.unique(), query.approx()))
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {
+                    });
+        } else {
+            UriComponentsBuilder uriBuilder = UriComponentsBuilder
+                    .fromPath("/stats")
+                    .queryParam("start", query.start().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                    .queryParam("end", query.end().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                    .queryParam("unique", query.unique())
+                    .queryParam("approx", query.approx());
+
+            if (!query.uris().isEmpty()) {
+                uriBuilder.queryParam("uris", query.uris());
+            }
 
-        if (uris != null && !uris.isEmpty()) {
-            uriBuilder.queryParam("uris", uris);
+            stats = restClient.get()
+                    .uri(uriBuilder.toUriString())
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {
+                    });
         }
+        // Список общий для всех объединённых вызовов
+        return stats == null ? List.of() : List.copyOf(stats);
+    }
 
-        if (unique != null) {
-            uriBuilder.queryParam("unique", unique);
+    private Map<String, Long> lookupViews(List<String> uris, boolean unique) {
+        if (viewLookupBatcher.isPresent()) {
+            return viewLookupBatcher.get().get(uris, unique, batch -> loadViews(batch, unique));
         }
+        return loadViews(uris, unique);
+    }
+
+    private Map<String, Long> loadViews(List<String> uris, boolean unique) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Long> views = new HashMap<>();
+        uris.forEach(uri -> views.put(uri, 0L));
+        for (ViewStatsDto stat : getStats(now.minus(viewsLookback), now, uris, unique, approximateViews)) {
+            views.merge(stat.getUri(), stat.getHits(), Long::sum);
+        }
+        return views;
+    }
 
-        return restClient.get()
-                .uri(uriBuilder.toUriString())
-                .retrieve()
-                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {
-                });
+    private record StatsQuery(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                              boolean approx) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package ru.practicum.stats.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кэш просмотров по (uri, unique) со stale-while-revalidate: свежая запись отдаётся как есть,
+ * устаревшая (моложе stale) — сразу, с одним фоновым обновлением на ключ. Если сервер статистики
+ * недоступен, отдаются последние известные значения независимо от возраста. Размер ограничен
+ * max-entries, лишние записи вытесняет Caffeine без обхода всего кэша.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.cache.enabled", havingValue = "true")
+public class ViewCountCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewCountCache.class);
+
+    private final Cache<Key, Entry> entries;
+    private final Map<Key, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-view-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final long freshNanos;
+    private final long staleNanos;
+
+    public ViewCountCache(@Value("${stats-server.cache.fresh-ttl:5s}") Duration freshTtl,
+                          @Value("${stats-server.cache.stale-ttl:5m}") Duration staleTtl,
+                          @Value("${stats-server.cache.max-entries:100000}") int maxEntries) {
+        this.freshNanos = freshTtl.toNanos();
+        this.staleNanos = staleTtl.toNanos();
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    /**
+     * Просмотры по uri; loader получает uri, которых нет в кэше или которые пора обновить,
+     * и возвращает просмотры по ним (отсутствующий uri означает ноль).
+     */
+    public Map<String, Long> get(List<String> uris, boolean unique, Function<List<String>, Map<String, Long>> loader) {
+        long now = System.nanoTime();
+        Map<String, Long> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (String uri : uris) {
+            Entry entry = entries.getIfPresent(new Key(uri, unique));
+            long age = entry == null ? Long.MAX_VALUE : now - entry.loadedAt();
+            if (age < freshNanos) {
+                hits.incrementAndGet();
+                result.put(uri, entry.views());
+            } else if (age < staleNanos) {
+                staleHits.incrementAndGet();
+                result.put(uri, entry.views());
+                if (refreshing.putIfAbsent(new Key(uri, unique), Boolean.TRUE) == null) {
+                    stale.add(uri);
+                }
+            } else {
+                misses.incrementAndGet();
+                missing.add(uri);
+            }
+        }
+        if (!stale.isEmpty()) {
+            refresher.execute(() -> refresh(stale, unique, loader));
+        }
+        if (!missing.isEmpty()) {
+            try {
+                result.putAll(load(missing, unique, loader));
+            } catch (RuntimeException e) {
+                if (!serveLastKnown(missing, unique, result)) {
+                    throw e;
+                }
+                log.warn("Сервер статистики недоступен, отданы последние известные просмотры: {}", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    private void refresh(List<String> uris, boolean unique, Function<List<String>, Map<String, Long>> loader) {
+        try {
+            load(uris, unique, loader);
+        } catch (RuntimeException e) {
+            log.debug("Не удалось обновить просмотры {} uri: {}", uris.size(), e.getMessage());
+        } finally {
+            uris.forEach(uri -> refreshing.remove(new Key(uri, unique)));
+        }
+    }
+
+    private Map<String, Long> load(List<String> uris, boolean unique, Function<List<String>, Map<String, Long>> loader) {
+        Map<String, Long> loaded = loader.apply(uris);
+        long now = System.nanoTime();
+        Map<String, Long> result = new HashMap<>();
+        for (String uri : uris) {
+            long views = loaded.getOrDefault(uri, 0L);
+            result.put(uri, views);
+            entries.put(new Key(uri, unique), new Entry(views, now));
+        }
+        return result;
+    }
+
+    private boolean serveLastKnown(List<String> uris, boolean unique, Map<String, Long> result) {
+        Map<String, Long> lastKnown = new HashMap<>();
+        for (String uri : uris) {
+            Entry entry = entries.getIfPresent(new Key(uri, unique));
+            if (entry == null) {
+                return false;
+            }
+            lastKnown.put(uri, entry.views());
+        }
+        result.putAll(lastKnown);
+        return true;
+    }
+
+    private record Key(String uri, boolean unique) {
+    }
+
+    private record Entry(long views, long loadedAt) {
+    }
+}
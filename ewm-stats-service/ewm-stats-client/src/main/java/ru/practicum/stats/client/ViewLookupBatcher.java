@@ -0,0 +1,131 @@
+package ru.practicum.stats.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Объединяет одновременные запросы просмотров в один вызов /stats по объединению uris.
+ * Первый вызов пачки становится ведущим: ждёт window или пока не наберётся max-uris,
+ * выполняет общий запрос в своём потоке и раздаёт результат остальным через CompletableFuture.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.batch.enabled", havingValue = "true")
+public class ViewLookupBatcher {
+
+    private final Object lock = new Object();
+    private final Map<Boolean, Batch> pending = new HashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedCalls = new AtomicLong();
+    private final long windowNanos;
+    private final int maxUris;
+
+    public ViewLookupBatcher(@Value("${stats-server.batch.window:2ms}") Duration window,
+                             @Value("${stats-server.batch.max-uris:200}") int maxUris) {
+        this.windowNanos = window.toNanos();
+        this.maxUris = maxUris;
+    }
+
+    /**
+     * Просмотры по uris. Пачку выполняет loader ведущего вызова, поэтому все вызовы
+     * должны передавать равнозначный loader.
+     */
+    public Map<String, Long> get(List<String> uris, boolean unique, Function<List<String>, Map<String, Long>> loader) {
+        Request request = new Request(uris, new CompletableFuture<>());
+        Batch batch;
+        boolean leader = false;
+        synchronized (lock) {
+            batch = pending.get(unique);
+            if (batch == null) {
+                batch = new Batch();
+                pending.put(unique, batch);
+                leader = true;
+            }
+            batch.requests.add(request);
+            batch.uris.addAll(uris);
+            if (batch.uris.size() >= maxUris) {
+                pending.remove(unique);
+                batch.full.countDown();
+            }
+        }
+        batchedCalls.incrementAndGet();
+        if (leader) {
+            awaitFull(batch);
+            synchronized (lock) {
+                pending.remove(unique, batch);
+            }
+            run(batch, loader);
+        }
+        try {
+            return request.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getBatchedCalls() {
+        return batchedCalls.get();
+    }
+
+    private void awaitFull(Batch batch) {
+        try {
+            batch.full.await(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Любая ошибка, включая Error, завершает все ещё не завершённые вызовы пачки,
+     * иначе они ждали бы результата вечно.
+     */
+    private void run(Batch batch, Function<List<String>, Map<String, Long>> loader) {
+        batches.incrementAndGet();
+        try {
+            Map<String, Long> views = loader.apply(new ArrayList<>(batch.uris));
+            for (Request request : batch.requests) {
+                Map<String, Long> result = new HashMap<>();
+                for (String uri : request.uris()) {
+                    result.put(uri, views.getOrDefault(uri, 0L));
+                }
+                request.result().complete(result);
+            }
+        } catch (RuntimeException | Error e) {
+            batch.requests.forEach(request -> request.result().completeExceptionally(e));
+        }
+    }
+
+    private static final class Batch {
+
+        private final List<Request> requests = new ArrayList<>();
+        private final Set<String> uris = new LinkedHashSet<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+
+    private record Request(List<String> uris, CompletableFuture<Map<String, Long>> result) {
+    }
+}
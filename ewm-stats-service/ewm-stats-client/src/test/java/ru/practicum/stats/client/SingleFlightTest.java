@@ -0,0 +1,159 @@
+package ru.practicum.stats.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void concurrentCallsWithSameKeyShareOneExecution() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            awaitCoalesced(flight, CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS - 1, flight.getCoalesced());
+    }
+
+    @Test
+    void exceptionIsRethrownToEveryCaller() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        IllegalStateException failure = new IllegalStateException("stats-server недоступен");
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    await(release);
+                    throw failure;
+                })));
+            }
+            awaitCoalesced(flight, CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void errorIsRethrownUnwrappedToEveryCaller() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AssertionError failure = new AssertionError("ошибка загрузчика");
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    await(release);
+                    throw failure;
+                })));
+            }
+            awaitCoalesced(flight, CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keyIsReleasedAfterCompletion() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertEquals(1, flight.execute("key", executions::incrementAndGet));
+        assertEquals(2, flight.execute("key", executions::incrementAndGet));
+        assertThrows(IllegalArgumentException.class, () -> flight.execute("key", () -> {
+            throw new IllegalArgumentException();
+        }));
+        assertEquals(3, flight.execute("key", executions::incrementAndGet));
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    @Test
+    void differentKeysAreNotCoalesced() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> flight.execute("a", () -> {
+                bothStarted.countDown();
+                await(bothStarted);
+                return "a";
+            }));
+            Future<String> second = executor.submit(() -> flight.execute("b", () -> {
+                bothStarted.countDown();
+                await(bothStarted);
+                return "b";
+            }));
+
+            assertEquals("a", first.get(5, TimeUnit.SECONDS));
+            assertEquals("b", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    private static void awaitCoalesced(SingleFlight<?, ?> flight, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.getCoalesced() < expected) {
+            assertTrue(System.nanoTime() < deadline, "coalesced=" + flight.getCoalesced());
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.practicum.stats.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ViewLookupBatcherTest {
+
+    // Окно заведомо больше времени теста: пачка закрывается только по max-uris
+    private static final Duration LONG_WINDOW = Duration.ofSeconds(30);
+
+    @Test
+    void concurrentCallsShareOneLoaderCallAndGetOwnUris() throws Exception {
+        ViewLookupBatcher batcher = new ViewLookupBatcher(LONG_WINDOW, 4);
+        List<List<String>> loaded = new CopyOnWriteArrayList<>();
+        Function<List<String>, Map<String, Long>> loader = uris -> {
+            loaded.add(uris);
+            return Map.of("/events/1", 10L, "/events/2", 20L, "/events/3", 30L);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Map<String, Long>> first = executor.submit(() ->
+                    batcher.get(List.of("/events/1", "/events/2"), false, loader));
+            Future<Map<String, Long>> second = executor.submit(() ->
+                    batcher.get(List.of("/events/2", "/events/3"), false, loader));
+            Future<Map<String, Long>> third = executor.submit(() ->
+                    batcher.get(List.of("/events/4"), false, loader));
+
+            assertEquals(Map.of("/events/1", 10L, "/events/2", 20L), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Map.of("/events/2", 20L, "/events/3", 30L), second.get(5, TimeUnit.SECONDS));
+            assertEquals(Map.of("/events/4", 0L), third.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loaded.size());
+        assertEquals(4, loaded.get(0).size());
+        assertEquals(1, batcher.getBatches());
+        assertEquals(3, batcher.getBatchedCalls());
+    }
+
+    @Test
+    void uniqueAndTotalViewsAreBatchedSeparately() {
+        ViewLookupBatcher batcher = new ViewLookupBatcher(Duration.ofMillis(1), 200);
+
+        Map<String, Long> total = batcher.get(List.of("/events/1"), false, uris -> Map.of("/events/1", 5L));
+        Map<String, Long> unique = batcher.get(List.of("/events/1"), true, uris -> Map.of("/events/1", 2L));
+
+        assertEquals(Map.of("/events/1", 5L), total);
+        assertEquals(Map.of("/events/1", 2L), unique);
+        assertEquals(2, batcher.getBatches());
+    }
+
+    @Test
+    void loneCallRunsAfterWindow() {
+        ViewLookupBatcher batcher = new ViewLookupBatcher(Duration.ofMillis(20), 200);
+
+        long started = System.nanoTime();
+        Map<String, Long> views = batcher.get(List.of("/events/1"), false, uris -> Map.of());
+
+        assertEquals(Map.of("/events/1", 0L), views);
+        assertEquals(1, batcher.getBatches());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void runtimeExceptionFromLoaderCompletesEveryCaller() throws Exception {
+        IllegalStateException failure = new IllegalStateException("stats-server недоступен");
+
+        for (ExecutionException e : callConcurrently(uris -> {
+            throw failure;
+        })) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    void errorFromLoaderCompletesEveryCaller() throws Exception {
+        StackOverflowError failure = new StackOverflowError();
+
+        for (ExecutionException e : callConcurrently(uris -> {
+            throw failure;
+        })) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Три вызова с разными uris при max-uris = 3: пачка закрывается третьим вызовом,
+     * и каждый вызов должен завершиться с ошибкой, а не повиснуть.
+     */
+    private static List<ExecutionException> callConcurrently(Function<List<String>, Map<String, Long>> loader)
+            throws InterruptedException {
+        ViewLookupBatcher batcher = new ViewLookupBatcher(LONG_WINDOW, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Map<String, Long>>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                List<String> uris = List.of("/events/" + i);
+                results.add(executor.submit(() -> batcher.get(uris, false, loader)));
+            }
+            List<ExecutionException> failures = new ArrayList<>();
+            for (Future<Map<String, Long>> result : results) {
+                failures.add(assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS)));
+            }
+            assertEquals(1, batcher.getBatches());
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.practicum.stats.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+/**
+ * Число обращений к uri по интервалам: counts[i] относится к
+ * [start + i * intervalSeconds, start + (i + 1) * intervalSeconds).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TimeSeriesDto {
+    String uri;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime start;
+
+    Long intervalSeconds;
+
+    Boolean unique;
+
+    long[] counts;
+}
@@ -0,0 +1,30 @@
+package ru.practicum.stats.export;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Декодированный блок выгрузки. Колонки app и uri хранят номера в словарях блока.
+ */
+public record HitBlock(int size, long[] timestamps, int[] apps, int[] uris, byte[][] ips,
+                       List<String> appDictionary, List<String> uriDictionary) {
+
+    public String app(int row) {
+        return appDictionary.get(apps[row]);
+    }
+
+    public String uri(int row) {
+        return uriDictionary.get(uris[row]);
+    }
+
+    public LocalDateTime time(int row) {
+        return LocalDateTime.ofEpochSecond(timestamps[row], 0, ZoneOffset.UTC);
+    }
+
+    public void forEach(HitVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.accept(app(i), uri(i), ips[i], timestamps[i]);
+        }
+    }
+}
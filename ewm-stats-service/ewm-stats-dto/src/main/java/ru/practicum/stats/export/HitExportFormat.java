@@ -0,0 +1,55 @@
+package ru.practicum.stats.export;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Формат выгрузки обращений. Все числа big-endian.
+ * <pre>
+ * файл:  MAGIC:int VERSION:int блок* 0:int
+ * блок:  length:int rows:int
+ *        словарь app: count:int (len:short utf8)*
+ *        словарь uri: count:int (len:short utf8)*
+ *        колонки, каждая с префиксом длины в байтах:
+ *          ts  — первое значение long, далее zigzag varint дельты
+ *          app — varint номера в словаре блока
+ *          uri — varint номера в словаре блока
+ *          ip  — (len:byte адрес)*
+ * </pre>
+ */
+final class HitExportFormat {
+
+    static final int MAGIC = 0x45574D58;
+    static final int VERSION = 1;
+
+    private HitExportFormat() {
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,145 @@
+package ru.practicum.stats.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Читает файл выгрузки через mmap. Каждый блок отображается отдельно, поэтому размер файла
+ * не ограничен 2 ГБ одного MappedByteBuffer.
+ */
+public class HitExportReader implements Iterator<HitBlock>, Closeable {
+
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private long position;
+    private int nextLength;
+
+    private HitExportReader(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        ByteBuffer header = map(0, HEADER_SIZE);
+        if (header.getInt() != HitExportFormat.MAGIC || header.getInt() != HitExportFormat.VERSION) {
+            throw new IOException("Not a hit export: " + path);
+        }
+        this.position = HEADER_SIZE;
+        this.nextLength = readLength();
+    }
+
+    public static HitExportReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new HitExportReader(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLength > 0;
+    }
+
+    @Override
+    public HitBlock next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            HitBlock block = decode(map(position, nextLength));
+            position += nextLength;
+            nextLength = readLength();
+            return block;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + path, e);
+        }
+    }
+
+    public void forEach(HitVisitor visitor) {
+        while (hasNext()) {
+            next().forEach(visitor);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readLength() throws IOException {
+        if (position + Integer.BYTES > channel.size()) {
+            throw new IOException("Truncated hit export: " + path);
+        }
+        int length = map(position, Integer.BYTES).getInt();
+        position += Integer.BYTES;
+        if (length < 0 || position + length > channel.size()) {
+            throw new IOException("Corrupted block at " + (position - Integer.BYTES) + " in " + path);
+        }
+        return length;
+    }
+
+    private MappedByteBuffer map(long offset, int length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static HitBlock decode(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        List<String> appDictionary = readDictionary(buffer);
+        List<String> uriDictionary = readDictionary(buffer);
+
+        long[] timestamps = new long[size];
+        ByteBuffer column = column(buffer);
+        timestamps[0] = column.getLong();
+        for (int i = 1; i < size; i++) {
+            timestamps[i] = timestamps[i - 1] + HitExportFormat.unzigzag(HitExportFormat.readVarLong(column));
+        }
+        int[] apps = readIds(column(buffer), size);
+        int[] uris = readIds(column(buffer), size);
+
+        byte[][] ips = new byte[size][];
+        column = column(buffer);
+        for (int i = 0; i < size; i++) {
+            ips[i] = new byte[column.get()];
+            column.get(ips[i]);
+        }
+        return new HitBlock(size, timestamps, apps, uris, ips, appDictionary, uriDictionary);
+    }
+
+    private static ByteBuffer column(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer column = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return column;
+    }
+
+    private static int[] readIds(ByteBuffer column, int size) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = (int) HitExportFormat.readVarLong(column);
+        }
+        return ids;
+    }
+
+    private static List<String> readDictionary(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> dictionary = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,155 @@
+package ru.practicum.stats.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пишет обращения блоками по blockSize строк в формате {@link HitExportFormat}.
+ * Словари app и uri свои у каждого блока, поэтому память ограничена размером блока.
+ */
+public class HitExportWriter implements HitVisitor, Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 65_536;
+
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final long[] timestamps;
+    private final int[] apps;
+    private final int[] uris;
+    private final byte[][] ips;
+    private final Map<String, Integer> appIds = new HashMap<>();
+    private final List<String> appDictionary = new ArrayList<>();
+    private final Map<String, Integer> uriIds = new HashMap<>();
+    private final List<String> uriDictionary = new ArrayList<>();
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream column = new ByteArrayOutputStream();
+    private int size;
+    private long written;
+
+    public HitExportWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    public HitExportWriter(OutputStream out, int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.out = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.timestamps = new long[blockSize];
+        this.apps = new int[blockSize];
+        this.uris = new int[blockSize];
+        this.ips = new byte[blockSize][];
+        this.out.writeInt(HitExportFormat.MAGIC);
+        this.out.writeInt(HitExportFormat.VERSION);
+    }
+
+    /**
+     * {@link HitVisitor} не объявляет IOException, поэтому ошибки записи пробрасываются как
+     * {@link UncheckedIOException}.
+     */
+    @Override
+    public void accept(String app, String uri, byte[] ip, long timestamp) {
+        try {
+            write(app, uri, ip, timestamp);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(String app, String uri, byte[] ip, long timestamp) throws IOException {
+        if (ip.length != 4 && ip.length != 16) {
+            throw new IllegalArgumentException("Invalid ip length: " + ip.length);
+        }
+        timestamps[size] = timestamp;
+        apps[size] = appIds.computeIfAbsent(app, key -> remember(appDictionary, key));
+        uris[size] = uriIds.computeIfAbsent(uri, key -> remember(uriDictionary, key));
+        ips[size] = ip;
+        size++;
+        if (size == blockSize) {
+            flushBlock();
+        }
+    }
+
+    public long getWritten() {
+        return written + size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBlock();
+        out.writeInt(0);
+        out.close();
+    }
+
+    private void flushBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        block.reset();
+        DataOutputStream data = new DataOutputStream(block);
+        data.writeInt(size);
+        writeDictionary(data, appDictionary);
+        writeDictionary(data, uriDictionary);
+
+        column.reset();
+        for (int i = 1; i < size; i++) {
+            HitExportFormat.writeVarLong(column, HitExportFormat.zigzag(timestamps[i] - timestamps[i - 1]));
+        }
+        data.writeInt(Long.BYTES + column.size());
+        data.writeLong(timestamps[0]);
+        column.writeTo(data);
+        writeIds(data, apps);
+        writeIds(data, uris);
+
+        column.reset();
+        for (int i = 0; i < size; i++) {
+            column.write(ips[i].length);
+            column.write(ips[i]);
+        }
+        data.writeInt(column.size());
+        column.writeTo(data);
+        data.flush();
+
+        out.writeInt(block.size());
+        block.writeTo(out);
+        written += size;
+        size = 0;
+        appIds.clear();
+        appDictionary.clear();
+        uriIds.clear();
+        uriDictionary.clear();
+    }
+
+    private void writeIds(DataOutputStream data, int[] ids) throws IOException {
+        column.reset();
+        for (int i = 0; i < size; i++) {
+            HitExportFormat.writeVarLong(column, ids[i]);
+        }
+        data.writeInt(column.size());
+        column.writeTo(data);
+    }
+
+    private static void writeDictionary(DataOutputStream data, List<String> dictionary) throws IOException {
+        data.writeInt(dictionary.size());
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            data.writeShort(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static int remember(List<String> dictionary, String value) {
+        dictionary.add(value);
+        return dictionary.size() - 1;
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.stats.export;
+
+/**
+ * Одно обращение из выгрузки: ip — 4 или 16 байт адреса, timestamp — секунды эпохи UTC.
+ */
+@FunctionalInterface
+public interface HitVisitor {
+
+    void accept(String app, String uri, byte[] ip, long timestamp);
+}
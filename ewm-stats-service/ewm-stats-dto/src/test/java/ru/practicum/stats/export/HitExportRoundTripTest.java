@@ -0,0 +1,128 @@
+package ru.practicum.stats.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HitExportRoundTripTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hitsRoundTripAcrossSeveralBlocks() throws IOException {
+        List<Hit> expected = new ArrayList<>();
+        for (int i = 0; i < HitExportWriter.DEFAULT_BLOCK_SIZE * 2 + 17; i++) {
+            byte[] ip = i % 3 == 0
+                    ? new byte[]{(byte) 0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) i}
+                    : new byte[]{10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+            // Время не монотонно: дельты бывают отрицательными
+            expected.add(new Hit("app-" + i % 2, "/events/" + i % 1000, ip, 1_760_000_000L + (i * 7919L) % 100_000));
+        }
+        Path path = directory.resolve("hits.ewmx");
+
+        try (OutputStream out = Files.newOutputStream(path); HitExportWriter writer = new HitExportWriter(out)) {
+            for (Hit hit : expected) {
+                writer.accept(hit.app(), hit.uri(), hit.ip(), hit.timestamp());
+            }
+            assertEquals(expected.size(), writer.getWritten());
+        }
+
+        List<Hit> actual = new ArrayList<>();
+        int blocks = 0;
+        try (HitExportReader reader = HitExportReader.open(path)) {
+            while (reader.hasNext()) {
+                reader.next().forEach((app, uri, ip, timestamp) -> actual.add(new Hit(app, uri, ip, timestamp)));
+                blocks++;
+            }
+        }
+        assertEquals(3, blocks);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void blockDictionariesAreLocalToBlock() throws IOException {
+        Path path = directory.resolve("hits.ewmx");
+        try (OutputStream out = Files.newOutputStream(path); HitExportWriter writer = new HitExportWriter(out, 2)) {
+            writer.write("main", "/a", new byte[]{1, 2, 3, 4}, 10);
+            writer.write("main", "/b", new byte[]{1, 2, 3, 4}, 5);
+            writer.write("other", "/c", new byte[]{1, 2, 3, 5}, 20);
+        }
+
+        try (HitExportReader reader = HitExportReader.open(path)) {
+            HitBlock first = reader.next();
+            assertEquals(2, first.size());
+            assertEquals(List.of("main"), first.appDictionary());
+            assertEquals(List.of("/a", "/b"), first.uriDictionary());
+            assertEquals(5, first.timestamps()[1]);
+
+            HitBlock second = reader.next();
+            assertEquals(1, second.size());
+            assertEquals("other", second.app(0));
+            assertEquals("/c", second.uri(0));
+            assertArrayEquals(new byte[]{1, 2, 3, 5}, second.ips()[0]);
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void emptyExportHasNoBlocks() throws IOException {
+        Path path = directory.resolve("empty.ewmx");
+        try (OutputStream out = Files.newOutputStream(path)) {
+            new HitExportWriter(out).close();
+        }
+
+        try (HitExportReader reader = HitExportReader.open(path)) {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void truncatedOrForeignFileIsRejected() throws IOException {
+        Path path = directory.resolve("hits.ewmx");
+        try (OutputStream out = Files.newOutputStream(path); HitExportWriter writer = new HitExportWriter(out)) {
+            writer.write("main", "/a", new byte[]{1, 2, 3, 4}, 10);
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        Path truncated = directory.resolve("truncated.ewmx");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 6));
+        Path foreign = directory.resolve("foreign.ewmx");
+        Files.write(foreign, new byte[16]);
+
+        assertThrows(IOException.class, () -> HitExportReader.open(truncated));
+        assertThrows(IOException.class, () -> HitExportReader.open(foreign));
+    }
+
+    @Test
+    void writerRejectsInvalidIp() throws IOException {
+        try (HitExportWriter writer = new HitExportWriter(OutputStream.nullOutputStream())) {
+            assertThrows(IllegalArgumentException.class, () -> writer.write("main", "/a", new byte[5], 10));
+        }
+    }
+
+    private record Hit(String app, String uri, byte[] ip, long timestamp) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Hit hit && app.equals(hit.app) && uri.equals(hit.uri) && Arrays.equals(ip, hit.ip)
+                    && timestamp == hit.timestamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(ip) + Long.hashCode(timestamp);
+        }
+    }
+}
@@ -1,11 +1,73 @@
 package ru.practicum.stats;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.practicum.stats.exception.HitImportException;
+import ru.practicum.stats.model.HitImportResult;
+import ru.practicum.stats.service.HitImportService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+@EnableScheduling
 @SpringBootApplication
 public class StatsServiceApplication {
-    public static void main(String[] args) {
+    private static final String SKIP_ARG = "--skip=";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && "import".equals(args[0])) {
+            runImport(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SpringApplication.run(StatsServiceApplication.class, args);
     }
-}
\ No newline at end of file
+
+    /**
+     * {@code java -jar ewm-stats-server.jar import [--skip=N] <файл.ndjson[.gz]|-> ...} — импорт без запуска
+     * веб-сервера. --skip пропускает первые N записей первого файла, чтобы продолжить прерванный импорт.
+     */
+    private static void runImport(String[] args) throws IOException {
+        long skip = Arrays.stream(args)
+                .filter(arg -> arg.startsWith(SKIP_ARG))
+                .mapToLong(arg -> Long.parseLong(arg.substring(SKIP_ARG.length())))
+                .findFirst()
+                .orElse(0);
+        String[] files = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toArray(String[]::new);
+        String[] springArgs = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && !arg.startsWith(SKIP_ARG))
+                .toArray(String[]::new);
+        if (files.length == 0) {
+            files = new String[]{"-"};
+        }
+        boolean failed = false;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(StatsServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(springArgs)) {
+            HitImportService importService = context.getBean(HitImportService.class);
+            for (int i = 0; i < files.length; i++) {
+                String file = files[i];
+                try (InputStream in = "-".equals(file) ? System.in : Files.newInputStream(Path.of(file))) {
+                    HitImportResult result = importService.importHits(in, i == 0 ? skip : 0);
+                    System.out.printf("%s: skipped=%d imported=%d rejected=%d compacted=%d%n", file,
+                            result.skipped(), result.imported(), result.rejected(), result.compacted());
+                } catch (HitImportException e) {
+                    System.err.printf("%s: %s%n", file, e.getMessage());
+                    System.err.printf("Продолжить: import %s%s %s%n", SKIP_ARG, e.getCommitted(),
+                            String.join(" ", Arrays.copyOfRange(files, i, files.length)));
+                    failed = true;
+                    break;
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
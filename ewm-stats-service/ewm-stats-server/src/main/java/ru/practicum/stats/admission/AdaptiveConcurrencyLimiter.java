@@ -0,0 +1,81 @@
+package ru.practicum.stats.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Лимит одновременных запросов, подстраивающийся под задержку: пока текущая задержка близка
+ * к долгосрочной средней, лимит растёт на sqrt(limit), при росте задержки он уменьшается
+ * пропорционально отношению средних, но не больше чем вдвое за шаг.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_WINDOW = 600;
+    private static final double SMOOTHING = 0.2;
+    private static final double TOLERANCE = 1.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Освобождает место; rttNanos учитывается только для успешно обработанных запросов.
+     */
+    public void release(long rttNanos, boolean success) {
+        int current = inFlight.getAndDecrement();
+        if (success) {
+            update(rttNanos, current);
+        } else {
+            synchronized (this) {
+                limit = Math.max(minLimit, limit / 2);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtRelease) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        }
+        // Без этого средняя, выросшая за время перегрузки, не даст лимиту снова упасть
+        if (longRttNanos > 2 * rttNanos) {
+            longRttNanos *= 0.95;
+        }
+        // Лимит не растёт, пока он не используется хотя бы наполовину
+        if (inFlightAtRelease < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+}
@@ -0,0 +1,98 @@
+package ru.practicum.stats.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Допуск записей обращений: POST /hit и /hits проходят только в пределах адаптивного лимита,
+ * остальные получают 429 с Retry-After. Импорт идёт минутами, и его задержка сбила бы адаптивный
+ * лимит, поэтому для него отдельный постоянный лимит import-limit. Соединения для чтений резервирует
+ * не фильтр, а WritePermits; max-limit выше stats.write.max-connections лишь держит лишние запросы
+ * в ожидании.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.admission.enabled", havingValue = "true")
+public class HitAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Set<String> WRITE_PATHS = Set.of("/hit", "/hits");
+    private static final String IMPORT_PATH = "/admin/hits/import";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final AdaptiveConcurrencyLimiter importLimiter;
+    private final Counter rejected;
+    private final String retryAfter;
+
+    public HitAdmissionFilter(MeterRegistry meterRegistry,
+                              @Value("${stats.admission.initial-limit:2}") int initialLimit,
+                              @Value("${stats.admission.min-limit:1}") int minLimit,
+                              @Value("${stats.admission.max-limit:4}") int maxLimit,
+                              @Value("${stats.admission.import-limit:1}") int importLimit,
+                              @Value("${stats.admission.retry-after:1s}") Duration retryAfter) {
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        // min и max совпадают: лимит импорта не подстраивается под задержку
+        this.importLimiter = new AdaptiveConcurrencyLimiter(importLimit, importLimit, importLimit);
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.rejected = Counter.builder("stats.admission.rejected")
+                .description("Записи обращений, отклонённые из-за перегрузки")
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Текущий лимит одновременных записей")
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.in_flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Записи обращений, обрабатываемые сейчас")
+                .register(meterRegistry);
+        log.info("Контроль допуска записей включён: limit={}, min={}, max={}, import={}", initialLimit, minLimit,
+                maxLimit, importLimit);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) || !WRITE_PATHS.contains(request.getServletPath())
+                && !IMPORT_PATH.equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdaptiveConcurrencyLimiter limiter = IMPORT_PATH.equals(request.getServletPath())
+                ? importLimiter
+                : this.limiter;
+        if (!limiter.tryAcquire()) {
+            rejected.increment();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("{\"error\":\"Сервер перегружен, повторите позже\"}");
+            return;
+        }
+        long startedAt = System.nanoTime();
+        boolean success = false;
+        try {
+            chain.doFilter(request, response);
+            success = response.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            limiter.release(System.nanoTime() - startedAt, success);
+        }
+    }
+}
@@ -1,15 +1,33 @@
 package ru.practicum.stats.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.StatsRequestDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.UriCounterDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.export.HitExportWriter;
+import ru.practicum.stats.model.HitImportResult;
+import ru.practicum.stats.service.HitImportService;
 import ru.practicum.stats.service.StatsService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -18,7 +36,11 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class StatsController {
+    private static final long MAX_TIME_SERIES_POINTS = 10_000;
+
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
+    private final HitImportService hitImportService;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -26,6 +48,26 @@ public class StatsController {
         statsService.saveHit(endpointHitDto);
     }
 
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void hits(@RequestBody List<EndpointHitDto> endpointHitDtos) {
+        log.info("Получен пакет из {} обращений", endpointHitDtos.size());
+        statsService.saveHits(endpointHitDtos);
+    }
+
+    @PostMapping("/admin/hits/import")
+    public HitImportResult importHits(HttpServletRequest request,
+                                      @RequestParam(required = false, defaultValue = "0") long skip)
+            throws IOException {
+        if (skip < 0) {
+            throw new IllegalArgumentException("Параметр skip не может быть отрицательным");
+        }
+        HitImportResult result = hitImportService.importHits(request.getInputStream(), skip);
+        log.info("Импорт обращений: загружено {}, пропущено {}, отброшено как уже сохранённые {}, " +
+                "раньше границы уплотнения {}", result.imported(), result.rejected(), result.skipped(), result.compacted());
+        return result;
+    }
+
     @GetMapping("/stats")
     public List<ViewStatsDto> getStats(
             @RequestParam(required = true) String start,
@@ -33,18 +75,154 @@ public class StatsController {
             @RequestParam(required = false)
             List<String> uris,
             @RequestParam(required = false, defaultValue = "false")
-            Boolean unique
+            Boolean unique,
+            @RequestParam(required = false, defaultValue = "false")
+            Boolean approx
     ) {
         log.info("Получен запрос на выгрузку статистики за период с {} по {}", start, end);
 
         LocalDateTime startDate = parseDate(start);
         LocalDateTime endDate = parseDate(end);
 
+        validateRange(startDate, endDate);
+
+        return statsService.getStats(startDate, endDate, uris, unique, approx);
+    }
+
+    @PostMapping("/stats")
+    public List<ViewStatsDto> getStats(@Valid @RequestBody StatsRequestDto request) {
+        log.info("Получен запрос на выгрузку статистики за период с {} по {} для {} URI", request.getStart(),
+                request.getEnd(), request.getUris() == null ? 0 : request.getUris().size());
+
+        validateRange(request.getStart(), request.getEnd());
+
+        return statsService.getStats(request.getStart(), request.getEnd(), request.getUris(),
+                Boolean.TRUE.equals(request.getUnique()), Boolean.TRUE.equals(request.getApprox()));
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStatsDto> getTop(
+            @RequestParam(required = true) String start,
+            @RequestParam(required = true) String end,
+            @RequestParam(required = false, defaultValue = "10")
+            Integer k
+    ) {
+        log.info("Получен запрос на топ-{} URI за период с {} по {}", k, start, end);
+
+        LocalDateTime startDate = parseDate(start);
+        LocalDateTime endDate = parseDate(end);
+        validateRange(startDate, endDate);
+        if (k <= 0) {
+            throw new IllegalArgumentException("Параметр k должен быть положительным");
+        }
+
+        return statsService.getTop(startDate, endDate, k);
+    }
+
+    @GetMapping("/stats/counters")
+    public List<UriCounterDto> getCounters(@RequestParam(required = false) List<String> uris) {
+        log.info("Получен запрос на счётчики обращений для {} URI", uris == null ? "всех" : uris.size());
+        return statsService.getCounters(uris);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public TimeSeriesDto getTimeSeries(
+            @RequestParam(required = true) String uri,
+            @RequestParam(required = true) String start,
+            @RequestParam(required = true) String end,
+            @RequestParam(required = false, defaultValue = "1h")
+            String interval,
+            @RequestParam(required = false, defaultValue = "false")
+            Boolean unique
+    ) {
+        log.info("Получен запрос на ряд обращений к {} за период с {} по {} с шагом {}", uri, start, end, interval);
+
+        LocalDateTime startDate = parseDate(start);
+        LocalDateTime endDate = parseDate(end);
+        validateRange(startDate, endDate);
+        Duration step = DurationStyle.detectAndParse(interval);
+        if (step.toSeconds() <= 0) {
+            throw new IllegalArgumentException("Интервал должен быть не меньше секунды");
+        }
+        if (Duration.between(startDate, endDate).toSeconds() / step.toSeconds() >= MAX_TIME_SERIES_POINTS) {
+            throw new IllegalArgumentException("Слишком много интервалов, максимум " + MAX_TIME_SERIES_POINTS);
+        }
+
+        return statsService.getTimeSeries(uri, startDate, endDate, step, unique);
+    }
+
+    @GetMapping(value = "/stats/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamStats(
+            @RequestParam(required = true) String start,
+            @RequestParam(required = true) String end,
+            @RequestParam(required = false)
+            List<String> uris,
+            @RequestParam(required = false, defaultValue = "false")
+            Boolean unique,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+            String accept
+    ) {
+        log.info("Получен запрос на потоковую выгрузку статистики за период с {} по {}", start, end);
+
+        LocalDateTime startDate = parseDate(start);
+        LocalDateTime endDate = parseDate(end);
+        validateRange(startDate, endDate);
+
+        boolean ndjson = accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.createGenerator(out);
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            statsService.streamStats(startDate, endDate, uris, unique, stat -> {
+                try {
+                    generator.writeObject(stat);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+            generator.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @GetMapping("/stats/export")
+    public ResponseEntity<StreamingResponseBody> exportHits(
+            @RequestParam(required = true) String start,
+            @RequestParam(required = true) String end
+    ) {
+        log.info("Получен запрос на выгрузку обращений за период с {} по {}", start, end);
+
+        LocalDateTime startDate = parseDate(start);
+        LocalDateTime endDate = parseDate(end);
+        validateRange(startDate, endDate);
+        statsService.requireRawHits(startDate);
+
+        StreamingResponseBody body = out -> {
+            try (HitExportWriter writer = new HitExportWriter(out)) {
+                statsService.exportHits(startDate, endDate, writer);
+                log.info("Выгружено {} обращений", writer.getWritten());
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"hits.ewmx\"")
+                .body(body);
+    }
+
+    private void validateRange(LocalDateTime startDate, LocalDateTime endDate) {
         if (startDate.isAfter(endDate)) {
             throw new IllegalArgumentException("Дата начала не может быть позже даты окончания");
         }
-
-        return statsService.getStats(startDate, endDate, uris, unique);
     }
 
     private LocalDateTime parseDate(String date) {
@@ -2,6 +2,8 @@ package ru.practicum.stats.exception;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -34,6 +36,15 @@ public class ExceptionErrorHandler {
         return new ErrorResponse("Validation failed: " + e.getMessage());
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
+        log.warn("MethodArgumentNotValidException: {}", e.getMessage());
+        return new ErrorResponse("Validation failed: " + e.getBindingResult().getFieldErrors().stream()
+                .map(error -> error.getField() + " " + error.getDefaultMessage())
+                .toList());
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleDateTimeParseException(DateTimeParseException e) {
@@ -41,6 +52,17 @@ public class ExceptionErrorHandler {
         return new ErrorResponse("Invalid date format. Expected: yyyy-MM-dd HH:mm:ss");
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleHitImportException(HitImportException e) {
+        if (e.isBadInput()) {
+            log.warn("HitImportException: {}", e.getMessage());
+        } else {
+            log.error("HitImportException: ", e);
+        }
+        return ResponseEntity.status(e.isBadInput() ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleInternalServerError(Exception e) {
@@ -0,0 +1,32 @@
+package ru.practicum.stats.exception;
+
+/**
+ * Импорт прерван: committed первых записей потока уже сохранены, повтор с skip=committed
+ * продолжит с первой несохранённой записи без повторного учёта.
+ */
+public class HitImportException extends RuntimeException {
+
+    private final long committed;
+    private final long imported;
+    private final boolean badInput;
+
+    public HitImportException(long committed, long imported, boolean badInput, Throwable cause) {
+        super("Импорт прерван после " + committed + " записей (сохранено обращений: " + imported + "): "
+                + cause.getMessage() + ". Повторите импорт с skip=" + committed, cause);
+        this.committed = committed;
+        this.imported = imported;
+        this.badInput = badInput;
+    }
+
+    public long getCommitted() {
+        return committed;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public boolean isBadInput() {
+        return badInput;
+    }
+}
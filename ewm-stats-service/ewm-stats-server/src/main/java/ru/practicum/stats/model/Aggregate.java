@@ -0,0 +1,32 @@
+package ru.practicum.stats.model;
+
+/**
+ * Производные таблицы, которые ведутся при записи обращений и достраиваются по сырым
+ * обращениям после включения.
+ */
+public enum Aggregate {
+    ROLLUP("rollup"),
+    TOPK("topk"),
+    BITMAP("bitmap"),
+    SKETCH("sketch"),
+    COUNTERS("counters");
+
+    private final String key;
+
+    Aggregate(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public static Aggregate ofKey(String key) {
+        for (Aggregate aggregate : values()) {
+            if (aggregate.key.equals(key)) {
+                return aggregate;
+            }
+        }
+        return null;
+    }
+}
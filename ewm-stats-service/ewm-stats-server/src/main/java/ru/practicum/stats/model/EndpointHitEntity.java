@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
-import java.time.LocalDateTime;
+import java.net.InetAddress;
 
 @Entity
 @Builder
@@ -19,15 +19,18 @@ public class EndpointHitEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
-    @Column(nullable = false)
-    String app;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "app_id", nullable = false)
+    AppEntity app;
 
-    @Column(nullable = false)
-    String uri;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "uri_id", nullable = false)
+    UriEntity uri;
 
     @Column(nullable = false)
-    String ip;
+    InetAddress ip;
 
-    @Column(nullable = false)
-    LocalDateTime timestamp;
+    // Секунды эпохи UTC, см. EpochSeconds
+    @Column(name = "ts", nullable = false)
+    Long timestamp;
 }
@@ -0,0 +1,8 @@
+package ru.practicum.stats.model;
+
+/**
+ * Итог импорта: skipped — записи, пропущенные по параметру skip, rejected — некорректные записи,
+ * compacted — записи раньше границы уплотнения, которые уже нельзя добавить ни в hits, ни в агрегаты.
+ */
+public record HitImportResult(long skipped, long imported, long rejected, long compacted) {
+}
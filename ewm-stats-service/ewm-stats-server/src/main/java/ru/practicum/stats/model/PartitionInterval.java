@@ -0,0 +1,75 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+
+public enum PartitionInterval {
+    DAY(ChronoUnit.DAYS, DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTH(ChronoUnit.MONTHS, new DateTimeFormatterBuilder()
+            .appendPattern("yyyyMM")
+            .parseDefaulting(ChronoField.DAY_OF_MONTH, 1)
+            .toFormatter());
+
+    private static final String PREFIX = "hits_p";
+
+    private final ChronoUnit unit;
+    private final DateTimeFormatter suffixFormat;
+
+    PartitionInterval(ChronoUnit unit, DateTimeFormatter suffixFormat) {
+        this.unit = unit;
+        this.suffixFormat = suffixFormat;
+    }
+
+    public LocalDate floor(LocalDate date) {
+        return this == MONTH ? date.withDayOfMonth(1) : date;
+    }
+
+    public LocalDate next(LocalDate from) {
+        return from.plus(1, unit);
+    }
+
+    public String partitionName(LocalDate from) {
+        return PREFIX + from.format(suffixFormat);
+    }
+
+    /**
+     * Нижняя граница секции по её имени или null, если имя создано не этим enum.
+     */
+    public static LocalDate lowerBound(String partitionName) {
+        PartitionInterval interval = of(partitionName);
+        return interval == null ? null : LocalDate.parse(partitionName.substring(PREFIX.length()), interval.suffixFormat);
+    }
+
+    /**
+     * Верхняя граница секции по её имени или null, если имя создано не этим enum.
+     */
+    public static LocalDate upperBound(String partitionName) {
+        PartitionInterval interval = of(partitionName);
+        return interval == null ? null : interval.next(lowerBound(partitionName));
+    }
+
+    /**
+     * Интервал секции по её имени или null, если имя создано не этим enum.
+     */
+    public static PartitionInterval of(String partitionName) {
+        if (!partitionName.startsWith(PREFIX)) {
+            return null;
+        }
+        String suffix = partitionName.substring(PREFIX.length());
+        for (PartitionInterval interval : values()) {
+            try {
+                LocalDate from = LocalDate.parse(suffix, interval.suffixFormat);
+                if (interval.partitionName(from).equals(partitionName)) {
+                    return interval;
+                }
+            } catch (DateTimeParseException e) {
+                // имя другого интервала
+            }
+        }
+        return null;
+    }
+}
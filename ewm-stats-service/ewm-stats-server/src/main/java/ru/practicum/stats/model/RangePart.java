@@ -0,0 +1,14 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Полуоткрытый интервал [from, to), который читается из агрегатов уровня bucket
+ * или из сырых обращений, если bucket равен null.
+ */
+public record RangePart(TimeBucket bucket, LocalDateTime from, LocalDateTime to) {
+
+    public boolean isRaw() {
+        return bucket == null;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum TimeBucket {
+    MINUTE(ChronoUnit.MINUTES, "minute"),
+    HOUR(ChronoUnit.HOURS, "hour"),
+    DAY(ChronoUnit.DAYS, "day"),
+    MONTH(ChronoUnit.MONTHS, "month");
+
+    private final ChronoUnit unit;
+    private final String suffix;
+
+    TimeBucket(ChronoUnit unit, String suffix) {
+        this.unit = unit;
+        this.suffix = suffix;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        // truncatedTo не принимает единицы крупнее суток
+        if (unit == ChronoUnit.MONTHS) {
+            return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        }
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+}
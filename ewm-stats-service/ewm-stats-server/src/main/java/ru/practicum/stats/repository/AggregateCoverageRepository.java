@@ -0,0 +1,70 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.Aggregate;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * С какого момента производная таблица содержит все обращения. Строка есть только у ведущихся
+ * таблиц; covered_from NULL означает всю историю и возвращается как LocalDateTime.MIN.
+ * Запись обращений берёт разделяемую блокировку и добавляет в таблицу только обращения
+ * не раньше covered_from, достройка берёт исключительную и сдвигает covered_from назад
+ * в той же транзакции, поэтому каждое обращение попадает в таблицу ровно один раз.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class AggregateCoverageRepository {
+
+    // Ключ pg_advisory_xact_lock между записью обращений и достройкой агрегатов
+    private static final long LOCK_KEY = 0x45574D41L;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void lockShared() {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock_shared(?)", LOCK_KEY);
+    }
+
+    public void lockExclusive() {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?)", LOCK_KEY);
+    }
+
+    public Map<Aggregate, LocalDateTime> findCoverage() {
+        Map<Aggregate, LocalDateTime> coverage = new EnumMap<>(Aggregate.class);
+        jdbcTemplate.query("SELECT name, covered_from FROM stats_aggregate_coverage", rs -> {
+            Aggregate aggregate = Aggregate.ofKey(rs.getString("name"));
+            if (aggregate != null) {
+                LocalDateTime coveredFrom = rs.getObject("covered_from", LocalDateTime.class);
+                coverage.put(aggregate, coveredFrom == null ? LocalDateTime.MIN : coveredFrom);
+            }
+        });
+        return coverage;
+    }
+
+    /**
+     * Начало периода, за который таблица полна; LocalDateTime.MAX, если таблица не ведётся.
+     */
+    public LocalDateTime findCoveredFrom(Aggregate aggregate) {
+        return findCoverage().getOrDefault(aggregate, LocalDateTime.MAX);
+    }
+
+    public void start(Aggregate aggregate, LocalDateTime coveredFrom) {
+        jdbcTemplate.update("INSERT INTO stats_aggregate_coverage (name, covered_from) VALUES (?, ?) " +
+                "ON CONFLICT (name) DO UPDATE SET covered_from = EXCLUDED.covered_from", aggregate.key(), coveredFrom);
+    }
+
+    public void stop(Aggregate aggregate) {
+        jdbcTemplate.update("DELETE FROM stats_aggregate_coverage WHERE name = ?", aggregate.key());
+    }
+
+    public void setCoveredFrom(Aggregate aggregate, LocalDateTime coveredFrom) {
+        jdbcTemplate.update("UPDATE stats_aggregate_coverage SET covered_from = ? WHERE name = ?",
+                LocalDateTime.MIN.equals(coveredFrom) ? null : coveredFrom, aggregate.key());
+    }
+}
@@ -0,0 +1,292 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Точный подсчёт уникальных IP: для каждого (app, uri, bucket) хранится roaring-битмап
+ * идентификаторов IP из {@link IpDictionaryRepository}. Запись обращений только вставляет пары
+ * (час, идентификатор IP) в stats_ip_bitmap_deltas, битмапы обновляет {@link #mergeStaged(int)}:
+ * чтение и перезапись битмапа популярного uri не держат блокировку строки до фиксации записи.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class BitmapRepository {
+
+    private static final List<TimeBucket> LEVELS = List.of(TimeBucket.DAY, TimeBucket.HOUR);
+
+    private static final int LOCK_CHUNK = 1000;
+
+    private static final Comparator<BitmapKey> KEY_ORDER = Comparator.comparingInt(BitmapKey::appId)
+            .thenComparingInt(BitmapKey::uriId)
+            .thenComparing(BitmapKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final IpDictionaryRepository ipDictionaryRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final AppDictionaryRepository appDictionaryRepository;
+    private final UriDictionaryRepository uriDictionaryRepository;
+
+    /**
+     * Вставляет приращения в транзакции записи обращений, по строке на различный (app, uri, час, IP).
+     */
+    public void stage(List<EndpointHitEntity> hits) {
+        Map<InetAddress, Integer> ipIds = ipDictionaryRepository.resolve(hits.stream()
+                .map(EndpointHitEntity::getIp)
+                .distinct()
+                .toList());
+        Set<StagedIp> staged = new HashSet<>();
+        for (EndpointHitEntity hit : hits) {
+            staged.add(new StagedIp(new BitmapKey(hit.getApp().getId(), hit.getUri().getId(),
+                    TimeBucket.HOUR.floor(EpochSeconds.toLocalDateTime(hit.getTimestamp()))), ipIds.get(hit.getIp())));
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO stats_ip_bitmap_deltas " +
+                        "(app_id, uri_id, bucket, ip_id) VALUES (?, ?, ?, ?)", new ArrayList<>(staged), staged.size(),
+                (ps, row) -> {
+                    ps.setInt(1, row.key().appId());
+                    ps.setInt(2, row.key().uriId());
+                    ps.setObject(3, row.key().bucket());
+                    ps.setInt(4, row.ipId());
+                });
+    }
+
+    /**
+     * Переносит в битмапы обоих уровней до limit самых старых приращений и возвращает их число.
+     * Удаление и слияние идут в одной транзакции, а запросы читают битмапы и приращения
+     * одним запросом, поэтому ни одно приращение не теряется из ответа.
+     */
+    @Transactional
+    public int mergeStaged(int limit) {
+        Map<TimeBucket, Map<BitmapKey, RoaringBitmap>> bitmaps = new EnumMap<>(TimeBucket.class);
+        int[] rows = {0};
+        jdbcTemplate.query("DELETE FROM stats_ip_bitmap_deltas WHERE id IN (" +
+                        "SELECT id FROM stats_ip_bitmap_deltas ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING app_id, uri_id, bucket, ip_id",
+                new MapSqlParameterSource("limit", limit), rs -> {
+                    rows[0]++;
+                    LocalDateTime hour = rs.getObject("bucket", LocalDateTime.class);
+                    for (TimeBucket level : LEVELS) {
+                        bitmaps.computeIfAbsent(level, l -> new TreeMap<>(KEY_ORDER))
+                                .computeIfAbsent(new BitmapKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                                        level.floor(hour)), key -> new RoaringBitmap())
+                                .add(rs.getInt("ip_id"));
+                    }
+                });
+        bitmaps.forEach(this::mergeAll);
+        return rows[0];
+    }
+
+    /**
+     * Добавляет в битмапы IP сырых обращений за [from, to): в этот период запись обращений
+     * битмапы не обновляла, см. {@link AggregateCoverageRepository}.
+     */
+    public void backfill(long from, long to) {
+        List<HourIp> rows = new ArrayList<>();
+        jdbcTemplate.query("SELECT DISTINCT app_id, uri_id, " +
+                        "date_trunc('hour', to_timestamp(ts) AT TIME ZONE 'UTC') AS bucket, ip FROM hits " +
+                        "WHERE ts >= :from AND ts < :to",
+                new MapSqlParameterSource().addValue("from", from).addValue("to", to), rs -> {
+                    rows.add(new HourIp(new BitmapKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getObject("bucket", LocalDateTime.class)), InetAddresses.parse(rs.getString("ip"))));
+                });
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<InetAddress, Integer> ipIds = ipDictionaryRepository.resolve(rows.stream()
+                .map(HourIp::ip)
+                .distinct()
+                .toList());
+        for (TimeBucket level : LEVELS) {
+            Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+            for (HourIp row : rows) {
+                BitmapKey key = new BitmapKey(row.key().appId(), row.key().uriId(), level.floor(row.key().bucket()));
+                bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(ipIds.get(row.ip()));
+            }
+            mergeAll(level, bitmaps);
+        }
+    }
+
+    public void deleteFrom(LocalDateTime from) {
+        jdbcTemplate.update("DELETE FROM stats_ip_bitmap_deltas" + (from == null ? "" : " WHERE bucket >= :from"),
+                new MapSqlParameterSource("from", from));
+        for (TimeBucket level : LEVELS) {
+            jdbcTemplate.update("DELETE FROM stats_ip_bitmap_" + level.suffix() +
+                    (from == null ? "" : " WHERE bucket >= :from"), new MapSqlParameterSource("from", from));
+        }
+    }
+
+    public List<ViewStatsDto> findStatsUnique(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<RangePart> parts = RangePlanner.plan(start, end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), LEVELS,
+                hitCompactionRepository.findWatermark(), aggregateCoverageRepository.findCoveredFrom(Aggregate.BITMAP));
+        boolean filterUris = uris != null && !uris.isEmpty();
+        String uriFilter = filterUris
+                ? " AND uri_id IN (SELECT id FROM stats_uri_dictionary WHERE uri = ANY(CAST(:uris AS varchar[])))"
+                : "";
+
+        Map<AppUri, RoaringBitmap> merged = new HashMap<>();
+        // IP без идентификатора ни в один битмап не попали, поэтому считаются отдельно
+        Map<AppUri, Set<String>> unresolved = new HashMap<>();
+        for (RangePart part : parts) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            if (filterUris) {
+                params.addValue("uris", uris.toArray(String[]::new));
+            }
+            if (part.isRaw()) {
+                params.addValue("from", EpochSeconds.ceil(part.from()));
+                params.addValue("to", EpochSeconds.ceil(part.to()));
+                jdbcTemplate.query("SELECT DISTINCT h.app_id, h.uri_id, h.ip, d.id FROM hits h " +
+                        "LEFT JOIN stats_ip_dictionary d ON d.ip = h.ip " +
+                        "WHERE h.ts >= :from AND h.ts < :to" + uriFilter, params, rs -> {
+                            AppUri appUri = new AppUri(rs.getInt("app_id"), rs.getInt("uri_id"));
+                            int id = rs.getInt("id");
+                            if (rs.wasNull()) {
+                                unresolved.computeIfAbsent(appUri, key -> new HashSet<>()).add(rs.getString("ip"));
+                            } else {
+                                merged.computeIfAbsent(appUri, key -> new RoaringBitmap()).add(id);
+                            }
+                        });
+            } else {
+                params.addValue("from", part.from());
+                params.addValue("to", part.to());
+                String filter = " WHERE bucket >= :from AND bucket < :to" + uriFilter;
+                // Не слитые приращения читаются тем же запросом, что и битмапы, то есть из одного снимка
+                jdbcTemplate.query("SELECT app_id, uri_id, bitmap, NULL AS ip_id FROM stats_ip_bitmap_" +
+                        part.bucket().suffix() + filter +
+                        " UNION ALL SELECT app_id, uri_id, NULL, ip_id FROM stats_ip_bitmap_deltas" + filter, params,
+                        rs -> {
+                            RoaringBitmap bitmap = merged.computeIfAbsent(
+                                    new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new RoaringBitmap());
+                            byte[] stored = rs.getBytes("bitmap");
+                            if (stored != null) {
+                                bitmap.or(deserialize(stored));
+                            } else {
+                                bitmap.add(rs.getInt("ip_id"));
+                            }
+                        });
+            }
+        }
+
+        unresolved.keySet().forEach(appUri -> merged.computeIfAbsent(appUri, key -> new RoaringBitmap()));
+        Map<Integer, String> apps = appDictionaryRepository.findByIds(merged.keySet().stream()
+                .map(AppUri::appId)
+                .collect(Collectors.toSet()));
+        Map<Integer, String> uriNames = uriDictionaryRepository.findByIds(merged.keySet().stream()
+                .map(AppUri::uriId)
+                .collect(Collectors.toSet()));
+        return merged.entrySet().stream()
+                .map(entry -> new ViewStatsDto(apps.get(entry.getKey().appId()), uriNames.get(entry.getKey().uriId()),
+                        entry.getValue().getLongCardinality()
+                                + unresolved.getOrDefault(entry.getKey(), Set.of()).size()))
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+
+    private void mergeAll(TimeBucket level, Map<BitmapKey, RoaringBitmap> bitmaps) {
+        List<BitmapKey> keys = new ArrayList<>(bitmaps.keySet());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            merge("stats_ip_bitmap_" + level.suffix(), keys.subList(from, Math.min(keys.size(), from + LOCK_CHUNK)),
+                    bitmaps);
+        }
+    }
+
+    private void merge(String table, List<BitmapKey> keys, Map<BitmapKey, RoaringBitmap> bitmaps) {
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO " + table + " (app_id, uri_id, bucket, bitmap) " +
+                        "VALUES (?, ?, ?, ?) ON CONFLICT (app_id, uri_id, bucket) DO NOTHING", keys, keys.size(),
+                (ps, key) -> {
+                    ps.setInt(1, key.appId());
+                    ps.setInt(2, key.uriId());
+                    ps.setObject(3, key.bucket());
+                    ps.setBytes(4, serialize(bitmaps.get(key)));
+                });
+
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{key.appId(), key.uriId(), key.bucket()})
+                .toList();
+        Map<BitmapKey, RoaringBitmap> updated = new TreeMap<>(KEY_ORDER);
+        jdbcTemplate.query("SELECT app_id, uri_id, bucket, bitmap FROM " + table +
+                        " WHERE (app_id, uri_id, bucket) IN (:keys) ORDER BY app_id, uri_id, bucket FOR UPDATE",
+                new MapSqlParameterSource("keys", tuples), rs -> {
+                    BitmapKey key = new BitmapKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getObject("bucket", LocalDateTime.class));
+                    RoaringBitmap bitmap = deserialize(rs.getBytes("bitmap"));
+                    bitmap.or(bitmaps.get(key));
+                    updated.put(key, bitmap);
+                });
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate("UPDATE " + table + " SET bitmap = ? " +
+                        "WHERE app_id = ? AND uri_id = ? AND bucket = ?",
+                new ArrayList<>(updated.entrySet()), updated.size(),
+                (ps, entry) -> {
+                    ps.setBytes(1, serialize(entry.getValue()));
+                    ps.setInt(2, entry.getKey().appId());
+                    ps.setInt(3, entry.getKey().uriId());
+                    ps.setObject(4, entry.getKey().bucket());
+                });
+    }
+
+    private static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.serialize(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+
+    private record BitmapKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+
+    private record HourIp(BitmapKey key, InetAddress ip) {
+    }
+
+    private record StagedIp(BitmapKey key, int ipId) {
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+}
@@ -0,0 +1,130 @@
+package ru.practicum.stats.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь «значение — плотный целочисленный идентификатор» с кэшем в памяти.
+ */
+public abstract class DictionaryRepository<K> {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String column;
+    private final String sqlType;
+    private final int cacheSize;
+    private final Map<K, Integer> cache = new ConcurrentHashMap<>();
+
+    protected DictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate, String table, String column, String sqlType,
+                                   int cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.column = column;
+        this.sqlType = sqlType;
+        this.cacheSize = cacheSize;
+    }
+
+    protected abstract String toSql(K key);
+
+    protected abstract K fromSql(String value);
+
+    public Map<K, Integer> resolve(Collection<K> keys) {
+        Map<K, Integer> ids = new HashMap<>();
+        // Сортировка задаёт одинаковый порядок вставки для параллельных транзакций
+        TreeMap<String, K> missing = new TreeMap<>();
+        for (K key : keys) {
+            Integer id = cache.get(key);
+            if (id != null) {
+                ids.put(key, id);
+            } else {
+                missing.put(toSql(key), key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        find(missing.keySet(), ids);
+        missing.values().removeAll(ids.keySet());
+        if (!missing.isEmpty()) {
+            Map<K, Integer> inserted = new HashMap<>();
+            jdbcTemplate.query("INSERT INTO " + table + " (" + column + ") " +
+                            "SELECT v FROM unnest(CAST(:values AS " + sqlType + "[])) AS t(v) " +
+                            "ON CONFLICT (" + column + ") DO NOTHING RETURNING id, " + column,
+                    new MapSqlParameterSource("values", missing.keySet().toArray(String[]::new)),
+                    rs -> {
+                        inserted.put(fromSql(rs.getString(column)), rs.getInt("id"));
+                    });
+            ids.putAll(inserted);
+            rememberAfterCommit(inserted);
+            missing.values().removeAll(inserted.keySet());
+            if (!missing.isEmpty()) {
+                // Значения, вставленные параллельной транзакцией
+                find(missing.keySet(), ids);
+            }
+        }
+        return ids;
+    }
+
+    public int resolve(K key) {
+        return resolve(List.of(key)).get(key);
+    }
+
+    /**
+     * Значения по идентификаторам — для вывода агрегатов, которые хранят только идентификаторы.
+     */
+    public Map<Integer, K> findByIds(Collection<Integer> ids) {
+        Map<Integer, K> values = new HashMap<>();
+        if (ids.isEmpty()) {
+            return values;
+        }
+        jdbcTemplate.query("SELECT id, " + column + " FROM " + table + " WHERE id = ANY(CAST(:ids AS integer[]))",
+                new MapSqlParameterSource("ids", ids.toArray(Integer[]::new)),
+                rs -> {
+                    values.put(rs.getInt("id"), fromSql(rs.getString(column)));
+                });
+        return values;
+    }
+
+    private void find(Collection<String> values, Map<K, Integer> ids) {
+        jdbcTemplate.query("SELECT id, " + column + " FROM " + table +
+                        " WHERE " + column + " = ANY(CAST(:values AS " + sqlType + "[]))",
+                new MapSqlParameterSource("values", values.toArray(String[]::new)),
+                rs -> {
+                    K key = fromSql(rs.getString(column));
+                    int id = rs.getInt("id");
+                    ids.put(key, id);
+                    remember(key, id);
+                });
+    }
+
+    private void remember(K key, int id) {
+        if (cache.size() >= cacheSize) {
+            cache.clear();
+        }
+        cache.put(key, id);
+    }
+
+    // Новые идентификаторы попадают в кэш только после фиксации, иначе откат оставил бы в кэше несуществующие id
+    private void rememberAfterCommit(Map<K, Integer> inserted) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inserted.forEach(this::remember);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                inserted.forEach(DictionaryRepository.this::remember);
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Граница уплотнения: обращения раньше неё удалены из hits и доступны только в агрегатах.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class HitCompactionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LocalDateTime findWatermark() {
+        List<LocalDateTime> watermarks = jdbcTemplate.query("SELECT watermark FROM stats_compaction WHERE id = 1",
+                (rs, rowNum) -> rs.getObject("watermark", LocalDateTime.class));
+        return watermarks.isEmpty() ? null : watermarks.get(0);
+    }
+
+    public void advanceWatermark(LocalDateTime watermark) {
+        jdbcTemplate.update("INSERT INTO stats_compaction (id, watermark) VALUES (1, ?) " +
+                "ON CONFLICT (id) DO UPDATE SET watermark = GREATEST(stats_compaction.watermark, EXCLUDED.watermark)",
+                watermark);
+    }
+
+    public Long findMinTimestamp(long before) {
+        return jdbcTemplate.queryForObject("SELECT MIN(ts) FROM hits WHERE ts < ?", Long.class, before);
+    }
+
+    public Long findMaxTimestamp(long before) {
+        return jdbcTemplate.queryForObject("SELECT MAX(ts) FROM hits WHERE ts < ?", Long.class, before);
+    }
+
+    public int deleteHits(long from, long to) {
+        return jdbcTemplate.update("DELETE FROM hits WHERE ts >= ? AND ts < ?", from, to);
+    }
+}
@@ -0,0 +1,142 @@
+package ru.practicum.stats.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.PartitionInterval;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Секции таблицы hits с кэшем уже существующих в памяти. Секция создаётся до записи попадающих
+ * в неё обращений, включая исторические при импорте, поэтому hits_default остаётся пустой.
+ */
+@Repository
+@Profile("!columnar")
+public class HitPartitionRepository {
+
+    // Ключ pg_advisory_xact_lock, под которым секции создаются по одной
+    private static final long LOCK_KEY = 0x45574D50L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionInterval interval;
+    // Нижние границы секций, о которых известно, что они существуют
+    private final Set<LocalDate> known = ConcurrentHashMap.newKeySet();
+
+    public HitPartitionRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                  @Value("${stats.partition.interval:DAY}") PartitionInterval interval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.interval = interval;
+    }
+
+    /**
+     * Создаёт секции для всех обращений пачки, которым её ещё нет. Вызывается вне транзакции
+     * записи, чтобы блокировка hits на время создания не держалась до конца записи.
+     */
+    public void ensurePartitions(List<EndpointHitEntity> hits) {
+        Set<LocalDate> missing = new TreeSet<>();
+        for (EndpointHitEntity hit : hits) {
+            LocalDate from = interval.floor(EpochSeconds.toLocalDateTime(hit.getTimestamp()).toLocalDate());
+            if (!known.contains(from)) {
+                missing.add(from);
+            }
+        }
+        missing.forEach(this::ensurePartition);
+    }
+
+    /**
+     * Секции могли появиться в другом процессе или остаться от интервала другой длины, поэтому
+     * создаются только части периода, не покрытые существующими секциями, с шагом пересекающейся
+     * секции: иначе одна дневная секция выдавала бы за существующий весь месяц, а обращения
+     * остальных дней уходили бы в hits_default.
+     */
+    public void ensurePartition(LocalDate from) {
+        if (known.contains(from)) {
+            return;
+        }
+        LocalDate to = interval.next(from);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?)", LOCK_KEY);
+            NavigableMap<LocalDate, LocalDate> existing = new TreeMap<>();
+            PartitionInterval step = interval;
+            for (String name : findPartitionNames()) {
+                LocalDate lower = PartitionInterval.lowerBound(name);
+                LocalDate upper = PartitionInterval.upperBound(name);
+                if (lower != null && lower.isBefore(to) && upper.isAfter(from)) {
+                    existing.put(lower, upper);
+                    step = PartitionInterval.of(name);
+                }
+            }
+            LocalDate cursor = from;
+            while (cursor.isBefore(to)) {
+                Map.Entry<LocalDate, LocalDate> covering = existing.floorEntry(cursor);
+                if (covering != null && covering.getValue().isAfter(cursor)) {
+                    cursor = covering.getValue();
+                    continue;
+                }
+                LocalDate next = step.next(cursor);
+                createPartition(cursor, next.isAfter(to) ? to : next, step.partitionName(cursor));
+                cursor = next;
+            }
+        });
+        known.add(from);
+    }
+
+    /**
+     * Если в hits_default уже есть строки из периода секции, CREATE … PARTITION OF не пройдёт:
+     * hits_default на время создания отсоединяется, а строки переносятся в новую секцию.
+     * Всё выполняется в транзакции вызывающего, параллельные записи в hits ждут её окончания.
+     */
+    private void createPartition(LocalDate from, LocalDate to, String name) {
+        long fromTs = EpochSeconds.of(from.atStartOfDay());
+        long toTs = EpochSeconds.of(to.atStartOfDay());
+        String bounds = "FOR VALUES FROM (" + fromTs + ") TO (" + toTs + ")";
+        Boolean inDefault = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM hits_default " +
+                "WHERE ts >= ? AND ts < ?)", Boolean.class, fromTs, toTs);
+        if (!Boolean.TRUE.equals(inDefault)) {
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF hits " + bounds);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION hits_default");
+        jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF hits " + bounds);
+        jdbcTemplate.update("INSERT INTO " + name + " (id, app_id, uri_id, ip, ts) " +
+                "SELECT id, app_id, uri_id, ip, ts FROM hits_default WHERE ts >= ? AND ts < ?", fromTs, toTs);
+        jdbcTemplate.update("DELETE FROM hits_default WHERE ts >= ? AND ts < ?", fromTs, toTs);
+        jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION hits_default DEFAULT");
+    }
+
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'hits'::regclass AND c.relname LIKE 'hits\\_p%'", String.class);
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+        LocalDate from = PartitionInterval.lowerBound(name);
+        if (from != null) {
+            known.remove(from);
+            known.remove(interval.floor(from));
+        }
+    }
+
+    /**
+     * Удаляет из hits_default строки раньше to — у них нет секции, которую можно удалить целиком.
+     */
+    public int deleteDefaultBefore(long to) {
+        return jdbcTemplate.update("DELETE FROM hits_default WHERE ts < ?", to);
+    }
+}
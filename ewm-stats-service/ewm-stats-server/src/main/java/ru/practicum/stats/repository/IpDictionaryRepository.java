@@ -0,0 +1,29 @@
+package ru.practicum.stats.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.net.InetAddress;
+
+@Repository
+@Profile("!columnar")
+public class IpDictionaryRepository extends DictionaryRepository<InetAddress> {
+
+    public IpDictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                  @Value("${stats.dictionary.cache-size:100000}") int cacheSize) {
+        super(jdbcTemplate, "stats_ip_dictionary", "ip", "inet", cacheSize);
+    }
+
+    @Override
+    protected String toSql(InetAddress key) {
+        return key.getHostAddress();
+    }
+
+    @Override
+    protected InetAddress fromSql(String value) {
+        return InetAddresses.parse(value);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.stats.repository;
+
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class RangePlanner {
+
+    private RangePlanner() {
+    }
+
+    /**
+     * Покрывает [from, to) самыми крупными целыми интервалами из levels (от крупного к мелкому),
+     * оставляя для сырых обращений только края, не выровненные по самому мелкому уровню.
+     */
+    public static List<RangePart> plan(LocalDateTime from, LocalDateTime to, List<TimeBucket> levels) {
+        List<RangePart> parts = new ArrayList<>();
+        plan(from, to, levels, 0, parts);
+        return parts;
+    }
+
+    /**
+     * То же, но сырые края раньше rawFrom (границы уплотнения, выровненной по самому мелкому уровню)
+     * заменяются целой корзиной самого мелкого уровня: сырых обращений там уже нет.
+     */
+    public static List<RangePart> plan(LocalDateTime from, LocalDateTime to, List<TimeBucket> levels,
+                                       LocalDateTime rawFrom) {
+        List<RangePart> parts = plan(from, to, levels);
+        if (rawFrom == null) {
+            return parts;
+        }
+        TimeBucket finest = levels.get(levels.size() - 1);
+        List<RangePart> result = new ArrayList<>(parts.size() + 1);
+        for (RangePart part : parts) {
+            if (!part.isRaw() || !part.from().isBefore(rawFrom)) {
+                result.add(part);
+                continue;
+            }
+            LocalDateTime split = part.to().isAfter(rawFrom) ? rawFrom : part.to();
+            result.add(new RangePart(finest, finest.floor(part.from()), finest.ceil(split)));
+            if (split.isBefore(part.to())) {
+                result.add(new RangePart(null, split, part.to()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * То же для агрегатов, полных только начиная с coveredFrom: всё раньше него читается
+     * из сырых обращений целиком, без разбиения по корзинам.
+     */
+    public static List<RangePart> plan(LocalDateTime from, LocalDateTime to, List<TimeBucket> levels,
+                                       LocalDateTime rawFrom, LocalDateTime coveredFrom) {
+        if (!from.isBefore(coveredFrom)) {
+            return plan(from, to, levels, rawFrom);
+        }
+        List<RangePart> parts = new ArrayList<>();
+        LocalDateTime split = to.isBefore(coveredFrom) ? to : coveredFrom;
+        if (from.isBefore(split)) {
+            parts.add(new RangePart(null, from, split));
+        }
+        if (split.isBefore(to)) {
+            parts.addAll(plan(split, to, levels, rawFrom));
+        }
+        return parts;
+    }
+
+    private static void plan(LocalDateTime from, LocalDateTime to, List<TimeBucket> levels, int level,
+                             List<RangePart> parts) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == levels.size()) {
+            parts.add(new RangePart(null, from, to));
+            return;
+        }
+        TimeBucket bucket = levels.get(level);
+        LocalDateTime innerFrom = bucket.ceil(from);
+        LocalDateTime innerTo = bucket.floor(to);
+        if (!innerFrom.isBefore(innerTo)) {
+            plan(from, to, levels, level + 1, parts);
+            return;
+        }
+        plan(from, innerFrom, levels, level + 1, parts);
+        parts.add(new RangePart(bucket, innerFrom, innerTo));
+        plan(innerTo, to, levels, level + 1, parts);
+    }
+}
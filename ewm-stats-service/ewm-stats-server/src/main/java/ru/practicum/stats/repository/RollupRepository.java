@@ -0,0 +1,194 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class RollupRepository {
+
+    private static final List<TimeBucket> LEVELS = List.of(TimeBucket.DAY, TimeBucket.HOUR, TimeBucket.MINUTE);
+
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparingInt(RollupKey::appId)
+            .thenComparingInt(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+
+    /**
+     * Вставляет поминутные приращения в транзакции записи обращений. Существующие строки
+     * не меняются, поэтому одновременные записи популярного uri не ждут друг друга на строках
+     * корзин; в stats_rollup_{minute,hour,day} их переносит {@link #mergeStaged(int)}.
+     */
+    public void stage(List<EndpointHitEntity> hits) {
+        Map<RollupKey, Long> counts = new HashMap<>();
+        for (EndpointHitEntity hit : hits) {
+            counts.merge(new RollupKey(hit.getApp().getId(), hit.getUri().getId(),
+                    TimeBucket.MINUTE.floor(EpochSeconds.toLocalDateTime(hit.getTimestamp()))), 1L, Long::sum);
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO stats_rollup_deltas (app_id, uri_id, bucket, hits) " +
+                        "VALUES (?, ?, ?, ?)", new ArrayList<>(counts.entrySet()), counts.size(),
+                (ps, entry) -> {
+                    ps.setInt(1, entry.getKey().appId());
+                    ps.setInt(2, entry.getKey().uriId());
+                    ps.setObject(3, entry.getKey().bucket());
+                    ps.setLong(4, entry.getValue());
+                });
+    }
+
+    /**
+     * Переносит в корзины всех уровней до limit самых старых приращений и возвращает их число.
+     * Удаление и добавление идут в одной транзакции, а запросы читают корзины и приращения
+     * одним запросом, поэтому каждое приращение учитывается ровно один раз.
+     */
+    @Transactional
+    public int mergeStaged(int limit) {
+        Map<TimeBucket, Map<RollupKey, Long>> counts = new EnumMap<>(TimeBucket.class);
+        int[] rows = {0};
+        jdbcTemplate.query("DELETE FROM stats_rollup_deltas WHERE id IN (" +
+                        "SELECT id FROM stats_rollup_deltas ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING app_id, uri_id, bucket, hits",
+                new MapSqlParameterSource("limit", limit), rs -> {
+                    rows[0]++;
+                    LocalDateTime minute = rs.getObject("bucket", LocalDateTime.class);
+                    for (TimeBucket level : LEVELS) {
+                        counts.computeIfAbsent(level, l -> new TreeMap<>(KEY_ORDER))
+                                .merge(new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"), level.floor(minute)),
+                                        rs.getLong("hits"), Long::sum);
+                    }
+                });
+        counts.forEach(this::upsert);
+        return rows[0];
+    }
+
+    // Ключи отсортированы, чтобы параллельные слияния блокировали строки в одном порядке
+    private void upsert(TimeBucket level, Map<RollupKey, Long> counts) {
+        String table = "stats_rollup_" + level.suffix();
+        String sql = "INSERT INTO " + table + " (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits";
+        jdbcTemplate.getJdbcTemplate().batchUpdate(sql, new ArrayList<>(counts.entrySet()), counts.size(),
+                (ps, entry) -> {
+                    ps.setInt(1, entry.getKey().appId());
+                    ps.setInt(2, entry.getKey().uriId());
+                    ps.setObject(3, entry.getKey().bucket());
+                    ps.setLong(4, entry.getValue());
+                });
+    }
+
+    /**
+     * Добавляет в агрегаты сырые обращения за [from, to): в этот период запись обращений
+     * агрегаты не обновляла, см. {@link AggregateCoverageRepository}.
+     */
+    public void backfill(long from, long to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        for (TimeBucket level : LEVELS) {
+            String table = "stats_rollup_" + level.suffix();
+            jdbcTemplate.update("INSERT INTO " + table + " (app_id, uri_id, bucket, hits) " +
+                    "SELECT app_id, uri_id, " +
+                    "date_trunc('" + level.suffix() + "', to_timestamp(ts) AT TIME ZONE 'UTC') AS bucket, COUNT(*) " +
+                    "FROM hits WHERE ts >= :from AND ts < :to " +
+                    "GROUP BY app_id, uri_id, bucket " +
+                    "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits",
+                    params);
+        }
+    }
+
+    /**
+     * Удаляет корзины начиная с from (все, если from равен null) перед повторным включением.
+     */
+    public void deleteFrom(LocalDateTime from) {
+        jdbcTemplate.update("DELETE FROM stats_rollup_deltas" + (from == null ? "" : " WHERE bucket >= :from"),
+                new MapSqlParameterSource("from", from));
+        for (TimeBucket level : LEVELS) {
+            jdbcTemplate.update("DELETE FROM stats_rollup_" + level.suffix() +
+                    (from == null ? "" : " WHERE bucket >= :from"), new MapSqlParameterSource("from", from));
+        }
+    }
+
+    public List<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return jdbcTemplate.query(statsQuery(start, end, uris, params), params,
+                (rs, rowNum) -> new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    public List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", k);
+        return jdbcTemplate.query(statsQuery(start, end, null, params) + " LIMIT :limit", params,
+                (rs, rowNum) -> new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                            Consumer<ViewStatsDto> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        jdbcTemplate.query(statsQuery(start, end, uris, params), params, (RowCallbackHandler) rs ->
+                consumer.accept(new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"))));
+    }
+
+    private String statsQuery(LocalDateTime start, LocalDateTime end, List<String> uris,
+                              MapSqlParameterSource params) {
+        List<RangePart> parts = RangePlanner.plan(start, end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), LEVELS,
+                hitCompactionRepository.findWatermark(), aggregateCoverageRepository.findCoveredFrom(Aggregate.ROLLUP));
+        boolean filterUris = uris != null && !uris.isEmpty();
+        if (filterUris) {
+            params.addValue("uris", uris.toArray(String[]::new));
+        }
+        String uriFilter = filterUris
+                ? " AND uri_id IN (SELECT id FROM stats_uri_dictionary WHERE uri = ANY(CAST(:uris AS varchar[])))"
+                : "";
+
+        List<String> selects = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            RangePart part = parts.get(i);
+            if (part.isRaw()) {
+                params.addValue("from" + i, EpochSeconds.ceil(part.from()));
+                params.addValue("to" + i, EpochSeconds.ceil(part.to()));
+                selects.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                        "WHERE ts >= :from" + i + " AND ts < :to" + i + uriFilter + " GROUP BY app_id, uri_id");
+            } else {
+                params.addValue("from" + i, part.from());
+                params.addValue("to" + i, part.to());
+                String filter = " WHERE bucket >= :from" + i + " AND bucket < :to" + i + uriFilter;
+                selects.add("SELECT app_id, uri_id, hits FROM stats_rollup_" + part.bucket().suffix() + filter);
+                // Границы частей выровнены по минутам, как и ещё не слитые приращения
+                selects.add("SELECT app_id, uri_id, hits FROM stats_rollup_deltas" + filter);
+            }
+        }
+
+        // Агрегаты хранят идентификаторы словарей, имена подставляются только в итоговые строки
+        return "SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+                "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", selects) + ") " +
+                "AS parts GROUP BY app_id, uri_id) AS s " +
+                "JOIN stats_app_dictionary a ON a.id = s.app_id " +
+                "JOIN stats_uri_dictionary u ON u.id = s.uri_id ORDER BY s.hits DESC";
+    }
+
+    private record RollupKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+}
@@ -0,0 +1,244 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.sketch.HyperLogLog;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Оценка уникальных IP по HyperLogLog для каждого (app, uri, bucket). Запись обращений только
+ * вставляет хеши IP по часам в stats_hll_deltas, скетчи обновляет {@link #mergeStaged(int)}:
+ * чтение и перезапись скетча популярного uri не держат блокировку строки до фиксации записи.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class SketchRepository {
+
+    private static final List<TimeBucket> LEVELS = List.of(TimeBucket.DAY, TimeBucket.HOUR);
+
+    private static final int LOCK_CHUNK = 1000;
+
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparingInt(SketchKey::appId)
+            .thenComparingInt(SketchKey::uriId)
+            .thenComparing(SketchKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final AppDictionaryRepository appDictionaryRepository;
+    private final UriDictionaryRepository uriDictionaryRepository;
+
+    @Value("${stats.sketch.precision:12}")
+    private int precision;
+
+    /**
+     * Вставляет приращения в транзакции записи обращений, по строке на различный (app, uri, час, хеш IP).
+     */
+    public void stage(List<EndpointHitEntity> hits) {
+        Set<StagedHash> staged = new HashSet<>();
+        for (EndpointHitEntity hit : hits) {
+            staged.add(new StagedHash(new SketchKey(hit.getApp().getId(), hit.getUri().getId(),
+                    TimeBucket.HOUR.floor(EpochSeconds.toLocalDateTime(hit.getTimestamp()))),
+                    HyperLogLog.hash64(hit.getIp().getAddress())));
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO stats_hll_deltas (app_id, uri_id, bucket, hash) " +
+                        "VALUES (?, ?, ?, ?)", new ArrayList<>(staged), staged.size(),
+                (ps, row) -> {
+                    ps.setInt(1, row.key().appId());
+                    ps.setInt(2, row.key().uriId());
+                    ps.setObject(3, row.key().bucket());
+                    ps.setLong(4, row.hash());
+                });
+    }
+
+    /**
+     * Переносит в скетчи обоих уровней до limit самых старых приращений и возвращает их число.
+     * Удаление и слияние идут в одной транзакции, а запросы читают скетчи и приращения
+     * одним запросом, поэтому ни одно приращение не теряется из оценки.
+     */
+    @Transactional
+    public int mergeStaged(int limit) {
+        Map<TimeBucket, Map<SketchKey, HyperLogLog>> sketches = new EnumMap<>(TimeBucket.class);
+        int[] rows = {0};
+        jdbcTemplate.query("DELETE FROM stats_hll_deltas WHERE id IN (" +
+                        "SELECT id FROM stats_hll_deltas ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING app_id, uri_id, bucket, hash",
+                new MapSqlParameterSource("limit", limit), rs -> {
+                    rows[0]++;
+                    LocalDateTime hour = rs.getObject("bucket", LocalDateTime.class);
+                    for (TimeBucket level : LEVELS) {
+                        sketches.computeIfAbsent(level, l -> new TreeMap<>(KEY_ORDER))
+                                .computeIfAbsent(new SketchKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                                        level.floor(hour)), key -> new HyperLogLog(precision))
+                                .addHash(rs.getLong("hash"));
+                    }
+                });
+        sketches.forEach(this::mergeAll);
+        return rows[0];
+    }
+
+    /**
+     * Добавляет в скетчи IP сырых обращений за [from, to): в этот период запись обращений
+     * скетчи не обновляла, см. {@link AggregateCoverageRepository}.
+     */
+    public void backfill(long from, long to) {
+        Map<TimeBucket, Map<SketchKey, HyperLogLog>> sketches = new HashMap<>();
+        LEVELS.forEach(level -> sketches.put(level, new TreeMap<>(KEY_ORDER)));
+        jdbcTemplate.query("SELECT DISTINCT app_id, uri_id, " +
+                        "date_trunc('hour', to_timestamp(ts) AT TIME ZONE 'UTC') AS bucket, ip FROM hits " +
+                        "WHERE ts >= :from AND ts < :to",
+                new MapSqlParameterSource().addValue("from", from).addValue("to", to), rs -> {
+                    LocalDateTime hour = rs.getObject("bucket", LocalDateTime.class);
+                    byte[] ip = InetAddresses.parse(rs.getString("ip")).getAddress();
+                    for (TimeBucket level : LEVELS) {
+                        sketches.get(level).computeIfAbsent(new SketchKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                                level.floor(hour)), key -> new HyperLogLog(precision)).add(ip);
+                    }
+                });
+        sketches.forEach(this::mergeAll);
+    }
+
+    public void deleteFrom(LocalDateTime from) {
+        jdbcTemplate.update("DELETE FROM stats_hll_deltas" + (from == null ? "" : " WHERE bucket >= :from"),
+                new MapSqlParameterSource("from", from));
+        for (TimeBucket level : LEVELS) {
+            jdbcTemplate.update("DELETE FROM stats_hll_" + level.suffix() +
+                    (from == null ? "" : " WHERE bucket >= :from"), new MapSqlParameterSource("from", from));
+        }
+    }
+
+    public List<ViewStatsDto> findStatsUnique(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<RangePart> parts = RangePlanner.plan(start, end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), LEVELS,
+                hitCompactionRepository.findWatermark(), aggregateCoverageRepository.findCoveredFrom(Aggregate.SKETCH));
+        boolean filterUris = uris != null && !uris.isEmpty();
+        String uriFilter = filterUris
+                ? " AND uri_id IN (SELECT id FROM stats_uri_dictionary WHERE uri = ANY(CAST(:uris AS varchar[])))"
+                : "";
+
+        Map<AppUri, HyperLogLog> merged = new HashMap<>();
+        for (RangePart part : parts) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            if (filterUris) {
+                params.addValue("uris", uris.toArray(String[]::new));
+            }
+            if (part.isRaw()) {
+                params.addValue("from", EpochSeconds.ceil(part.from()));
+                params.addValue("to", EpochSeconds.ceil(part.to()));
+                jdbcTemplate.query("SELECT DISTINCT app_id, uri_id, ip FROM hits " +
+                        "WHERE ts >= :from AND ts < :to" + uriFilter, params, rs -> {
+                            merged.computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")),
+                                    key -> new HyperLogLog(precision)).add(InetAddresses.parse(rs.getString("ip")).getAddress());
+                        });
+            } else {
+                params.addValue("from", part.from());
+                params.addValue("to", part.to());
+                String filter = " WHERE bucket >= :from AND bucket < :to" + uriFilter;
+                // Не слитые приращения читаются тем же запросом, что и скетчи, то есть из одного снимка
+                jdbcTemplate.query("SELECT app_id, uri_id, sketch, NULL AS hash " +
+                        "FROM stats_hll_" + part.bucket().suffix() + filter +
+                        " UNION ALL SELECT app_id, uri_id, NULL, hash FROM stats_hll_deltas" + filter, params,
+                        rs -> {
+                            AppUri appUri = new AppUri(rs.getInt("app_id"), rs.getInt("uri_id"));
+                            byte[] stored = rs.getBytes("sketch");
+                            if (stored != null) {
+                                merged.merge(appUri, HyperLogLog.fromBytes(stored), HyperLogLog::merge);
+                            } else {
+                                merged.computeIfAbsent(appUri, key -> new HyperLogLog(precision))
+                                        .addHash(rs.getLong("hash"));
+                            }
+                        });
+            }
+        }
+
+        Map<Integer, String> apps = appDictionaryRepository.findByIds(merged.keySet().stream()
+                .map(AppUri::appId)
+                .collect(Collectors.toSet()));
+        Map<Integer, String> uriNames = uriDictionaryRepository.findByIds(merged.keySet().stream()
+                .map(AppUri::uriId)
+                .collect(Collectors.toSet()));
+        return merged.entrySet().stream()
+                .map(entry -> new ViewStatsDto(apps.get(entry.getKey().appId()), uriNames.get(entry.getKey().uriId()),
+                        entry.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+
+    private void mergeAll(TimeBucket level, Map<SketchKey, HyperLogLog> sketches) {
+        List<SketchKey> keys = new ArrayList<>(sketches.keySet());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            merge("stats_hll_" + level.suffix(), keys.subList(from, Math.min(keys.size(), from + LOCK_CHUNK)), sketches);
+        }
+    }
+
+    /**
+     * Вставка с DO NOTHING гарантирует существование строк, SELECT FOR UPDATE блокирует их
+     * в порядке ключей, после чего скетчи сливаются в памяти. Слияние идемпотентно,
+     * поэтому только что вставленная строка может безопасно слиться со своей же копией.
+     */
+    private void merge(String table, List<SketchKey> keys, Map<SketchKey, HyperLogLog> sketches) {
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO " + table + " (app_id, uri_id, bucket, sketch) " +
+                        "VALUES (?, ?, ?, ?) ON CONFLICT (app_id, uri_id, bucket) DO NOTHING", keys, keys.size(),
+                (ps, key) -> {
+                    ps.setInt(1, key.appId());
+                    ps.setInt(2, key.uriId());
+                    ps.setObject(3, key.bucket());
+                    ps.setBytes(4, sketches.get(key).toBytes());
+                });
+
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{key.appId(), key.uriId(), key.bucket()})
+                .toList();
+        Map<SketchKey, HyperLogLog> updated = new TreeMap<>(KEY_ORDER);
+        jdbcTemplate.query("SELECT app_id, uri_id, bucket, sketch FROM " + table +
+                        " WHERE (app_id, uri_id, bucket) IN (:keys) ORDER BY app_id, uri_id, bucket FOR UPDATE",
+                new MapSqlParameterSource("keys", tuples), rs -> {
+                    SketchKey key = new SketchKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getObject("bucket", LocalDateTime.class));
+                    updated.put(key, HyperLogLog.fromBytes(rs.getBytes("sketch")).merge(sketches.get(key)));
+                });
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate("UPDATE " + table + " SET sketch = ? " +
+                        "WHERE app_id = ? AND uri_id = ? AND bucket = ?",
+                new ArrayList<>(updated.entrySet()), updated.size(),
+                (ps, entry) -> {
+                    ps.setBytes(1, entry.getValue().toBytes());
+                    ps.setInt(2, entry.getKey().appId());
+                    ps.setInt(3, entry.getKey().uriId());
+                    ps.setObject(4, entry.getKey().bucket());
+                });
+    }
+
+    private record SketchKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+
+    private record StagedHash(SketchKey key, long hash) {
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+}
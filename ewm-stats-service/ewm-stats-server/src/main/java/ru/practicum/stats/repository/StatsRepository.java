@@ -1,33 +1,74 @@
 package ru.practicum.stats.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import ru.practicum.stats.dto.ViewStatsDto;
 import ru.practicum.stats.model.EndpointHitEntity;
 
-import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface StatsRepository extends JpaRepository<EndpointHitEntity, Long> {
+public interface StatsRepository extends JpaRepository<EndpointHitEntity, Long>, StatsRepositoryCustom {
 
-    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(h.app, h.uri, COUNT(h.ip)) " +
+    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(a.name, u.uri, COUNT(h.id)) " +
             "FROM EndpointHitEntity h " +
+            "JOIN h.app a " +
+            "JOIN h.uri u " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStatsDto> findStats(@Param("start") LocalDateTime start,
-                                 @Param("end") LocalDateTime end,
+            "AND (:uris IS NULL OR u.uri IN :uris) " +
+            "GROUP BY a.name, u.uri " +
+            "ORDER BY COUNT(h.id) DESC")
+    List<ViewStatsDto> findStats(@Param("start") Long start,
+                                 @Param("end") Long end,
                                  @Param("uris") List<String> uris);
 
-    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(a.name, u.uri, COUNT(DISTINCT h.ip)) " +
             "FROM EndpointHitEntity h " +
+            "JOIN h.app a " +
+            "JOIN h.uri u " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
+            "AND (:uris IS NULL OR u.uri IN :uris) " +
+            "GROUP BY a.name, u.uri " +
             "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<ViewStatsDto> findStatsUnique(@Param("start") LocalDateTime start,
-                                       @Param("end") LocalDateTime end,
+    List<ViewStatsDto> findStatsUnique(@Param("start") Long start,
+                                       @Param("end") Long end,
                                        @Param("uris") List<String> uris);
-}
\ No newline at end of file
+
+    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(a.name, u.uri, COUNT(h.id)) " +
+            "FROM EndpointHitEntity h " +
+            "JOIN h.app a " +
+            "JOIN h.uri u " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY a.name, u.uri " +
+            "ORDER BY COUNT(h.id) DESC")
+    List<ViewStatsDto> findTopStats(@Param("start") Long start,
+                                    @Param("end") Long end,
+                                    Limit limit);
+
+    // Курсорное чтение: поток нужно закрыть внутри транзакции, размер выборки задаёт hibernate.jdbc.fetch_size
+    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(a.name, u.uri, COUNT(h.id)) " +
+            "FROM EndpointHitEntity h " +
+            "JOIN h.app a " +
+            "JOIN h.uri u " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "AND (:uris IS NULL OR u.uri IN :uris) " +
+            "GROUP BY a.name, u.uri " +
+            "ORDER BY COUNT(h.id) DESC")
+    Stream<ViewStatsDto> streamStats(@Param("start") Long start,
+                                     @Param("end") Long end,
+                                     @Param("uris") List<String> uris);
+
+    @Query("SELECT new ru.practicum.stats.dto.ViewStatsDto(a.name, u.uri, COUNT(DISTINCT h.ip)) " +
+            "FROM EndpointHitEntity h " +
+            "JOIN h.app a " +
+            "JOIN h.uri u " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "AND (:uris IS NULL OR u.uri IN :uris) " +
+            "GROUP BY a.name, u.uri " +
+            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+    Stream<ViewStatsDto> streamStatsUnique(@Param("start") Long start,
+                                           @Param("end") Long end,
+                                           @Param("uris") List<String> uris);
+}
@@ -0,0 +1,32 @@
+package ru.practicum.stats.repository;
+
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.EndpointHitEntity;
+
+import java.util.List;
+
+public interface StatsRepositoryCustom {
+
+    void saveAllInBatch(List<EndpointHitEntity> hits);
+
+    /**
+     * Вставка через COPY FROM STDIN — для массового импорта.
+     */
+    void copyAll(List<EndpointHitEntity> hits);
+
+    /**
+     * Число обращений к uri в [from, to) по интервалам длины step секунд за один сгруппированный проход.
+     */
+    long[] countByInterval(String uri, long from, long to, long step, boolean unique);
+
+    /**
+     * Счётчики за всё время, посчитанные по сырым обращениям, — когда uri_counters не ведётся.
+     */
+    List<UriCounterDto> findCounters(List<String> uris);
+
+    /**
+     * Сырые обращения с ts в [from, to] по порядку времени — для выгрузки.
+     */
+    void streamHits(long from, long to, HitVisitor visitor);
+}
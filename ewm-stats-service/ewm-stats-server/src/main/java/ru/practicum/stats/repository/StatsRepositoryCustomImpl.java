@@ -0,0 +1,114 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class StatsRepositoryCustomImpl implements StatsRepositoryCustom {
+
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, ts) VALUES (?, ?, CAST(? AS inet), ?)";
+
+    private static final String COPY_HITS = "COPY hits (app_id, uri_id, ip, ts) FROM STDIN";
+
+    private static final String COUNT_BY_INTERVAL = "SELECT (ts - ?) / ? AS idx, %s AS hits FROM hits " +
+            "WHERE uri_id = (SELECT id FROM stats_uri_dictionary WHERE uri = ?) AND ts >= ? AND ts < ? GROUP BY idx";
+
+    private static final String FIND_COUNTERS = "SELECT a.name AS app, u.uri AS uri, c.total_hits, c.unique_ips, c.last_hit " +
+            "FROM (SELECT app_id, uri_id, COUNT(*) AS total_hits, COUNT(DISTINCT ip) AS unique_ips, MAX(ts) AS last_hit " +
+            "FROM hits %s GROUP BY app_id, uri_id) AS c " +
+            "JOIN stats_app_dictionary a ON a.id = c.app_id " +
+            "JOIN stats_uri_dictionary u ON u.id = c.uri_id " +
+            "ORDER BY c.total_hits DESC";
+
+    private static final String STREAM_HITS = "SELECT a.name AS app, u.uri AS uri, host(h.ip) AS ip, h.ts FROM hits h " +
+            "JOIN stats_app_dictionary a ON a.id = h.app_id " +
+            "JOIN stats_uri_dictionary u ON u.id = h.uri_id " +
+            "WHERE h.ts >= ? AND h.ts <= ? ORDER BY h.ts";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${stats.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public void saveAllInBatch(List<EndpointHitEntity> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getApp().getId());
+            ps.setInt(2, hit.getUri().getId());
+            ps.setString(3, hit.getIp().getHostAddress());
+            ps.setLong(4, hit.getTimestamp());
+        });
+    }
+
+    @Override
+    public void copyAll(List<EndpointHitEntity> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_HITS);
+            try {
+                StringBuilder row = new StringBuilder(64);
+                for (EndpointHitEntity hit : hits) {
+                    row.setLength(0);
+                    row.append(hit.getApp().getId()).append('\t')
+                            .append(hit.getUri().getId()).append('\t')
+                            .append(hit.getIp().getHostAddress()).append('\t')
+                            .append(hit.getTimestamp()).append('\n');
+                    byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                }
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    @Override
+    public long[] countByInterval(String uri, long from, long to, long step, boolean unique) {
+        long[] counts = new long[(int) ((to - from + step - 1) / step)];
+        jdbcTemplate.query(String.format(COUNT_BY_INTERVAL, unique ? "COUNT(DISTINCT ip)" : "COUNT(*)"),
+                rs -> {
+                    counts[rs.getInt("idx")] = rs.getLong("hits");
+                }, from, step, uri, from, to);
+        return counts;
+    }
+
+    @Override
+    public List<UriCounterDto> findCounters(List<String> uris) {
+        boolean filterUris = uris != null && !uris.isEmpty();
+        String sql = String.format(FIND_COUNTERS, filterUris
+                ? "WHERE uri_id IN (SELECT id FROM stats_uri_dictionary WHERE uri = ANY(CAST(? AS varchar[])))"
+                : "");
+        Object[] args = filterUris ? new Object[]{uris.toArray(String[]::new)} : new Object[0];
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new UriCounterDto(rs.getString("app"), rs.getString("uri"),
+                rs.getLong("total_hits"), rs.getLong("unique_ips"),
+                EpochSeconds.toLocalDateTime(rs.getLong("last_hit"))), args);
+    }
+
+    @Override
+    public void streamHits(long from, long to, HitVisitor visitor) {
+        jdbcTemplate.query(STREAM_HITS, rs -> {
+            visitor.accept(rs.getString("app"), rs.getString("uri"),
+                    InetAddresses.parse(rs.getString("ip")).getAddress(), rs.getLong("ts"));
+        }, from, to);
+    }
+}
@@ -0,0 +1,261 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.sketch.SpaceSaving;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Самые просматриваемые (app, uri): по сводке Space-Saving ограниченного размера на каждый час,
+ * сутки и месяц, чтобы запрос за год сливал десятки сводок, а не тысячи часовых.
+ * Запись обращений только вставляет почасовые приращения в stats_topk_deltas, сводки обновляет
+ * {@link #mergeStaged(int)}.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class TopKRepository {
+
+    private static final List<TimeBucket> LEVELS = List.of(TimeBucket.MONTH, TimeBucket.DAY, TimeBucket.HOUR);
+
+    // Разделитель идентификаторов app и uri в ключе сводки
+    private static final char SEPARATOR = ':';
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final AppDictionaryRepository appDictionaryRepository;
+    private final UriDictionaryRepository uriDictionaryRepository;
+
+    @Value("${stats.topk.capacity:1000}")
+    private int capacity;
+
+    /**
+     * Вставляет приращения в транзакции записи обращений, по строке на (app, uri, час).
+     */
+    public void stage(List<EndpointHitEntity> hits) {
+        Map<StagedKey, Long> counts = new HashMap<>();
+        for (EndpointHitEntity hit : hits) {
+            counts.merge(new StagedKey(hit.getApp().getId(), hit.getUri().getId(),
+                    TimeBucket.HOUR.floor(EpochSeconds.toLocalDateTime(hit.getTimestamp()))), 1L, Long::sum);
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO stats_topk_deltas (app_id, uri_id, bucket, hits) " +
+                        "VALUES (?, ?, ?, ?)", new ArrayList<>(counts.entrySet()), counts.size(),
+                (ps, entry) -> {
+                    ps.setInt(1, entry.getKey().appId());
+                    ps.setInt(2, entry.getKey().uriId());
+                    ps.setObject(3, entry.getKey().bucket());
+                    ps.setLong(4, entry.getValue());
+                });
+    }
+
+    /**
+     * Переносит в сводки всех уровней до limit самых старых приращений и возвращает их число. Удаление
+     * и слияние идут в одной транзакции, а запрос топа читает сводки и приращения одним
+     * запросом, поэтому каждое приращение учитывается ровно один раз.
+     */
+    @Transactional
+    public int mergeStaged(int limit) {
+        Map<TimeBucket, Map<LocalDateTime, Map<String, Long>>> counts = new EnumMap<>(TimeBucket.class);
+        int[] rows = {0};
+        jdbcTemplate.query("DELETE FROM stats_topk_deltas WHERE id IN (" +
+                        "SELECT id FROM stats_topk_deltas ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING app_id, uri_id, bucket, hits",
+                new MapSqlParameterSource("limit", limit), rs -> {
+                    rows[0]++;
+                    count(counts, rs.getObject("bucket", LocalDateTime.class), rs.getInt("app_id"),
+                            rs.getInt("uri_id"), rs.getLong("hits"));
+                });
+        counts.forEach((level, buckets) -> merge(level, summarize(buckets)));
+        return rows[0];
+    }
+
+    /**
+     * Строит сводки за сутки и месяцы из часовых, если их ещё нет, а часовые есть: иначе
+     * часы, сохранённые до появления этих уровней, выпали бы из запросов за целые сутки и месяцы.
+     * Часы читаются по порядку, и в памяти держатся сводки только одного месяца.
+     */
+    public void fillLevels() {
+        Boolean missing = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM stats_topk_hour) AND NOT EXISTS (SELECT 1 FROM stats_topk_day)",
+                Boolean.class);
+        if (!Boolean.TRUE.equals(missing)) {
+            return;
+        }
+        List<TimeBucket> coarser = LEVELS.subList(0, LEVELS.size() - 1);
+        Map<TimeBucket, Map<LocalDateTime, SpaceSaving>> summaries = new EnumMap<>(TimeBucket.class);
+        LocalDateTime[] month = {null};
+        jdbcTemplate.getJdbcTemplate().query("SELECT bucket, summary FROM stats_topk_hour ORDER BY bucket", rs -> {
+            LocalDateTime hour = rs.getObject("bucket", LocalDateTime.class);
+            if (!TimeBucket.MONTH.floor(hour).equals(month[0])) {
+                summaries.forEach(this::merge);
+                summaries.clear();
+                month[0] = TimeBucket.MONTH.floor(hour);
+            }
+            SpaceSaving summary = SpaceSaving.fromBytes(rs.getBytes("summary"));
+            for (TimeBucket level : coarser) {
+                summaries.computeIfAbsent(level, l -> new TreeMap<>())
+                        .merge(level.floor(hour), summary, SpaceSaving::merge);
+            }
+        });
+        summaries.forEach(this::merge);
+    }
+
+    /**
+     * Сливает сводки уровня level с сохранёнными.
+     */
+    private void merge(TimeBucket level, Map<LocalDateTime, SpaceSaving> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        String table = "stats_topk_" + level.suffix();
+        List<LocalDateTime> buckets = new ArrayList<>(new TreeMap<>(summaries).keySet());
+        byte[] empty = new SpaceSaving(capacity).toBytes();
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO " + table + " (bucket, summary) VALUES (?, ?) " +
+                        "ON CONFLICT (bucket) DO NOTHING", buckets, buckets.size(),
+                (ps, bucket) -> {
+                    ps.setObject(1, bucket);
+                    ps.setBytes(2, empty);
+                });
+
+        Map<LocalDateTime, SpaceSaving> updated = new TreeMap<>();
+        jdbcTemplate.query("SELECT bucket, summary FROM " + table + " WHERE bucket IN (:buckets) " +
+                        "ORDER BY bucket FOR UPDATE", new MapSqlParameterSource("buckets", buckets), rs -> {
+                    LocalDateTime bucket = rs.getObject("bucket", LocalDateTime.class);
+                    updated.put(bucket, SpaceSaving.fromBytes(rs.getBytes("summary")).merge(summaries.get(bucket)));
+                });
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate("UPDATE " + table + " SET summary = ? WHERE bucket = ?",
+                new ArrayList<>(updated.entrySet()), updated.size(),
+                (ps, entry) -> {
+                    ps.setBytes(1, entry.getValue().toBytes());
+                    ps.setObject(2, entry.getKey());
+                });
+    }
+
+    /**
+     * Добавляет к сводкам сырые обращения за [from, to), см. {@link AggregateCoverageRepository}.
+     */
+    public void backfill(long from, long to) {
+        Map<TimeBucket, Map<LocalDateTime, Map<String, Long>>> counts = new EnumMap<>(TimeBucket.class);
+        jdbcTemplate.query("SELECT app_id, uri_id, " +
+                        "date_trunc('hour', to_timestamp(ts) AT TIME ZONE 'UTC') AS bucket, COUNT(*) AS hits " +
+                        "FROM hits WHERE ts >= :from AND ts < :to GROUP BY app_id, uri_id, bucket",
+                new MapSqlParameterSource().addValue("from", from).addValue("to", to), rs -> {
+                    count(counts, rs.getObject("bucket", LocalDateTime.class), rs.getInt("app_id"),
+                            rs.getInt("uri_id"), rs.getLong("hits"));
+                });
+        counts.forEach((level, buckets) -> merge(level, summarize(buckets)));
+    }
+
+    public void deleteFrom(LocalDateTime from) {
+        String filter = from == null ? "" : " WHERE bucket >= :from";
+        jdbcTemplate.update("DELETE FROM stats_topk_deltas" + filter, new MapSqlParameterSource("from", from));
+        for (TimeBucket level : LEVELS) {
+            jdbcTemplate.update("DELETE FROM stats_topk_" + level.suffix() + filter,
+                    new MapSqlParameterSource("from", from));
+        }
+    }
+
+    public List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k) {
+        List<RangePart> parts = RangePlanner.plan(start, end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), LEVELS,
+                hitCompactionRepository.findWatermark(), aggregateCoverageRepository.findCoveredFrom(Aggregate.TOPK));
+        SpaceSaving[] merged = {new SpaceSaving(capacity)};
+        for (RangePart part : parts) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            if (part.isRaw()) {
+                params.addValue("from", EpochSeconds.ceil(part.from()));
+                params.addValue("to", EpochSeconds.ceil(part.to()));
+                SpaceSaving edge = new SpaceSaving(capacity);
+                jdbcTemplate.query("SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                        "WHERE ts >= :from AND ts < :to GROUP BY app_id, uri_id", params, rs -> {
+                            edge.add(key(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+                        });
+                merged[0] = merged[0].merge(edge);
+            } else {
+                params.addValue("from", part.from());
+                params.addValue("to", part.to());
+                SpaceSaving staged = new SpaceSaving(capacity);
+                // Не слитые приращения читаются тем же запросом, что и сводки, то есть из одного снимка
+                jdbcTemplate.query("SELECT summary, NULL AS app_id, NULL AS uri_id, NULL AS hits FROM stats_topk_" +
+                        part.bucket().suffix() + " WHERE bucket >= :from AND bucket < :to UNION ALL " +
+                        "SELECT NULL, app_id, uri_id, SUM(hits) FROM stats_topk_deltas " +
+                        "WHERE bucket >= :from AND bucket < :to GROUP BY app_id, uri_id", params, rs -> {
+                            byte[] summary = rs.getBytes("summary");
+                            if (summary != null) {
+                                merged[0] = merged[0].merge(SpaceSaving.fromBytes(summary));
+                            } else {
+                                staged.add(key(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+                            }
+                        });
+                merged[0] = merged[0].merge(staged);
+            }
+        }
+
+        List<SpaceSaving.Entry> top = merged[0].top(k);
+        List<int[]> ids = top.stream()
+                .map(entry -> {
+                    int separator = entry.key().indexOf(SEPARATOR);
+                    return new int[]{Integer.parseInt(entry.key().substring(0, separator)),
+                            Integer.parseInt(entry.key().substring(separator + 1))};
+                })
+                .toList();
+        Map<Integer, String> apps = appDictionaryRepository.findByIds(ids.stream()
+                .map(id -> id[0])
+                .collect(Collectors.toSet()));
+        Map<Integer, String> uris = uriDictionaryRepository.findByIds(ids.stream()
+                .map(id -> id[1])
+                .collect(Collectors.toSet()));
+        List<ViewStatsDto> result = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            result.add(new ViewStatsDto(apps.get(ids.get(i)[0]), uris.get(ids.get(i)[1]), top.get(i).count()));
+        }
+        return result;
+    }
+
+    private static void count(Map<TimeBucket, Map<LocalDateTime, Map<String, Long>>> counts, LocalDateTime hour,
+                              int appId, int uriId, long hits) {
+        for (TimeBucket level : LEVELS) {
+            counts.computeIfAbsent(level, l -> new HashMap<>())
+                    .computeIfAbsent(level.floor(hour), bucket -> new HashMap<>())
+                    .merge(key(appId, uriId), hits, Long::sum);
+        }
+    }
+
+    private Map<LocalDateTime, SpaceSaving> summarize(Map<LocalDateTime, Map<String, Long>> counts) {
+        Map<LocalDateTime, SpaceSaving> summaries = new TreeMap<>();
+        counts.forEach((bucket, keys) -> {
+            SpaceSaving summary = new SpaceSaving(capacity);
+            keys.forEach(summary::add);
+            summaries.put(bucket, summary);
+        });
+        return summaries;
+    }
+
+    public static String key(int appId, int uriId) {
+        return Integer.toString(appId) + SEPARATOR + uriId;
+    }
+
+    private record StagedKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+}
@@ -0,0 +1,305 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.sketch.HyperLogLog;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Счётчики за всё время по (app, uri): число обращений, оценка уникальных IP по HyperLogLog
+ * и время последнего обращения. Запись обращений только вставляет по строке приращения на (app, uri)
+ * с адресами этой записи в uri_counter_deltas, {@link ru.practicum.stats.storage.CounterBuffer} периодически сливает их
+ * в uri_counters. Не слитые приращения лежат в базе, поэтому учитываются в запросах и переживают
+ * аварийную остановку.
+ */
+@Repository
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class UriCounterRepository {
+
+    private static final int LOCK_CHUNK = 1000;
+
+    private static final Comparator<CounterKey> KEY_ORDER = Comparator.comparingInt(CounterKey::appId)
+            .thenComparingInt(CounterKey::uriId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${stats.sketch.precision:12}")
+    private int precision;
+
+    private Delta newDelta() {
+        return new Delta(new HyperLogLog(precision));
+    }
+
+    /**
+     * Вставляет приращения в транзакции записи обращений. Существующие строки не меняются,
+     * поэтому одновременные записи одного uri не ждут друг друга.
+     */
+    public void stage(List<EndpointHitEntity> hits) {
+        Map<CounterKey, Staged> staged = new HashMap<>();
+        for (EndpointHitEntity hit : hits) {
+            staged.computeIfAbsent(new CounterKey(hit.getApp().getId(), hit.getUri().getId()), key -> new Staged())
+                    .add(hit);
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO uri_counter_deltas " +
+                        "(app_id, uri_id, ips, hits, last_hit) VALUES (?, ?, CAST(? AS inet[]), ?, ?)",
+                new ArrayList<>(staged.entrySet()), staged.size(),
+                (ps, entry) -> {
+                    ps.setInt(1, entry.getKey().appId());
+                    ps.setInt(2, entry.getKey().uriId());
+                    ps.setArray(3, ps.getConnection().createArrayOf("varchar", entry.getValue().ips.toArray()));
+                    ps.setLong(4, entry.getValue().hits);
+                    ps.setObject(5, EpochSeconds.toLocalDateTime(entry.getValue().lastHit));
+                });
+    }
+
+    /**
+     * Переносит в uri_counters до limit самых старых приращений и возвращает их число.
+     * Удаление и слияние идут в одной транзакции, поэтому запрос счётчиков видит каждое
+     * приращение ровно один раз.
+     */
+    @Transactional
+    public int mergeStaged(int limit) {
+        Map<CounterKey, Delta> deltas = new HashMap<>();
+        int[] rows = {0};
+        jdbcTemplate.query("DELETE FROM uri_counter_deltas WHERE id IN (" +
+                        "SELECT id FROM uri_counter_deltas ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING app_id, uri_id, ARRAY(SELECT host(ip) FROM unnest(ips) AS ip) AS ips, " +
+                        "hits, last_hit",
+                new MapSqlParameterSource("limit", limit), rs -> {
+                    rows[0]++;
+                    Delta delta = deltas.computeIfAbsent(new CounterKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                            key -> newDelta());
+                    delta.addHits(rs.getLong("hits"), EpochSeconds.of(rs.getObject("last_hit", LocalDateTime.class)));
+                    for (String ip : (String[]) rs.getArray("ips").getArray()) {
+                        delta.addIp(InetAddresses.parse(ip).getAddress());
+                    }
+                });
+        if (!deltas.isEmpty()) {
+            merge(deltas);
+        }
+        return rows[0];
+    }
+
+    @Transactional
+    public void merge(Map<CounterKey, Delta> deltas) {
+        Map<CounterKey, Delta> sorted = new TreeMap<>(KEY_ORDER);
+        sorted.putAll(deltas);
+        List<CounterKey> keys = new ArrayList<>(sorted.keySet());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            merge(keys.subList(from, Math.min(keys.size(), from + LOCK_CHUNK)), sorted);
+        }
+    }
+
+    /**
+     * Добавляет к счётчикам сырые обращения за [from, to): в этот период запись обращений
+     * счётчики не обновляла, см. {@link AggregateCoverageRepository}.
+     */
+    public void backfill(long from, long to) {
+        Map<CounterKey, Delta> deltas = new HashMap<>();
+        jdbcTemplate.query("SELECT app_id, uri_id, ip, COUNT(*) AS hits, MAX(ts) AS last_ts FROM hits " +
+                        "WHERE ts >= :from AND ts < :to GROUP BY app_id, uri_id, ip",
+                new MapSqlParameterSource().addValue("from", from).addValue("to", to), rs -> {
+                    Delta delta = deltas.computeIfAbsent(new CounterKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                            key -> newDelta());
+                    delta.addHits(rs.getLong("hits"), rs.getLong("last_ts"));
+                    delta.addIp(InetAddresses.parse(rs.getString("ip")).getAddress());
+                });
+        if (!deltas.isEmpty()) {
+            merge(deltas);
+        }
+    }
+
+    public void deleteAll() {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM uri_counter_deltas");
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM uri_counters");
+    }
+
+    /**
+     * Сохранённые счётчики и не слитые приращения читаются одним запросом, то есть из одного
+     * снимка: слияние, зафиксированное между двумя запросами, учло бы приращения дважды.
+     * Строки идут в порядке (app, uri) и сворачиваются по одному ключу за раз. Скетч читается
+     * только у счётчиков с не слитыми приращениями, остальные отдают сохранённую оценку.
+     * Имена app и uri подставляются из словарей уже к объединённым строкам.
+     */
+    public List<UriCounterDto> findCounters(List<String> uris) {
+        boolean filterUris = uris != null && !uris.isEmpty();
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (filterUris) {
+            params.addValue("uris", uris.toArray(String[]::new));
+        }
+        String filter = filterUris
+                ? " WHERE uri_id IN (SELECT id FROM stats_uri_dictionary WHERE uri = ANY(CAST(:uris AS varchar[])))"
+                : "";
+        CounterReader reader = new CounterReader();
+        jdbcTemplate.query("SELECT r.*, a.name AS app, u.uri AS uri FROM (" +
+                "SELECT app_id, uri_id, 0 AS part, total_hits AS hits, unique_ips_estimate, last_hit, " +
+                "CASE WHEN EXISTS (SELECT 1 FROM uri_counter_deltas d " +
+                "WHERE d.app_id = c.app_id AND d.uri_id = c.uri_id) THEN sketch END AS sketch, NULL AS ips " +
+                "FROM uri_counters c" + filter +
+                " UNION ALL SELECT app_id, uri_id, 1, hits, NULL, last_hit, NULL, " +
+                "ARRAY(SELECT host(ip) FROM unnest(ips) AS ip) FROM uri_counter_deltas" + filter + ") AS r " +
+                "JOIN stats_app_dictionary a ON a.id = r.app_id " +
+                "JOIN stats_uri_dictionary u ON u.id = r.uri_id " +
+                "ORDER BY r.app_id, r.uri_id, r.part", params, reader);
+        return reader.result();
+    }
+
+    /**
+     * Та же схема, что у скетчей: вставка пустых строк, блокировка в порядке ключей, слияние в памяти.
+     */
+    private void merge(List<CounterKey> keys, Map<CounterKey, Delta> deltas) {
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO uri_counters " +
+                        "(app_id, uri_id, total_hits, unique_ips_estimate, last_hit, sketch) " +
+                        "VALUES (?, ?, 0, 0, ?, ?) " +
+                        "ON CONFLICT (app_id, uri_id) DO NOTHING", keys, keys.size(),
+                (ps, key) -> {
+                    ps.setInt(1, key.appId());
+                    ps.setInt(2, key.uriId());
+                    ps.setObject(3, EpochSeconds.toLocalDateTime(deltas.get(key).lastHit));
+                    ps.setBytes(4, new HyperLogLog(precision).toBytes());
+                });
+
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{key.appId(), key.uriId()})
+                .toList();
+        List<Object[]> updates = new ArrayList<>();
+        jdbcTemplate.query("SELECT app_id, uri_id, last_hit, sketch FROM uri_counters " +
+                        "WHERE (app_id, uri_id) IN (:keys) ORDER BY app_id, uri_id FOR UPDATE",
+                new MapSqlParameterSource("keys", tuples), rs -> {
+                    CounterKey key = new CounterKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+                    Delta delta = deltas.get(key);
+                    HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch")).merge(delta.sketch);
+                    LocalDateTime lastHit = rs.getObject("last_hit", LocalDateTime.class);
+                    LocalDateTime deltaLastHit = EpochSeconds.toLocalDateTime(delta.lastHit);
+                    updates.add(new Object[]{delta.hits, sketch.estimate(),
+                            deltaLastHit.isAfter(lastHit) ? deltaLastHit : lastHit, sketch.toBytes(), key.appId(),
+                            key.uriId()});
+                });
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate("UPDATE uri_counters SET total_hits = total_hits + ?, " +
+                "unique_ips_estimate = ?, last_hit = ?, sketch = ? WHERE app_id = ? AND uri_id = ?", updates);
+    }
+
+    public record CounterKey(int appId, int uriId) {
+    }
+
+    /**
+     * Приращение одного (app, uri) в пределах записи: различные адреса, число обращений и последнее время.
+     */
+    private static final class Staged {
+
+        private final Set<String> ips = new LinkedHashSet<>();
+        private long hits;
+        private long lastHit = Long.MIN_VALUE;
+
+        private void add(EndpointHitEntity hit) {
+            ips.add(hit.getIp().getHostAddress());
+            hits++;
+            lastHit = Math.max(lastHit, hit.getTimestamp());
+        }
+    }
+
+    /**
+     * Сворачивает упорядоченные по (app, uri) строки счётчиков и приращений в ответ.
+     */
+    private final class CounterReader implements RowCallbackHandler {
+
+        private final List<UriCounterDto> counters = new ArrayList<>();
+        private CounterKey key;
+        private String app;
+        private String uri;
+        private long hits;
+        private long lastHit;
+        private long storedEstimate;
+        private HyperLogLog sketch;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            CounterKey rowKey = new CounterKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+            if (!rowKey.equals(key)) {
+                finish();
+                key = rowKey;
+                app = rs.getString("app");
+                uri = rs.getString("uri");
+                hits = 0;
+                lastHit = Long.MIN_VALUE;
+                storedEstimate = 0;
+                sketch = null;
+            }
+            hits += rs.getLong("hits");
+            lastHit = Math.max(lastHit, EpochSeconds.of(rs.getObject("last_hit", LocalDateTime.class)));
+            if (rs.getInt("part") == 0) {
+                storedEstimate = rs.getLong("unique_ips_estimate");
+                byte[] stored = rs.getBytes("sketch");
+                if (stored != null) {
+                    sketch = HyperLogLog.fromBytes(stored);
+                }
+                return;
+            }
+            if (sketch == null) {
+                sketch = new HyperLogLog(precision);
+            }
+            for (String ip : (String[]) rs.getArray("ips").getArray()) {
+                sketch.add(InetAddresses.parse(ip).getAddress());
+            }
+        }
+
+        private List<UriCounterDto> result() {
+            finish();
+            counters.sort(Comparator.comparing(UriCounterDto::getTotalHits).reversed());
+            return counters;
+        }
+
+        private void finish() {
+            if (key != null) {
+                counters.add(new UriCounterDto(app, uri, hits,
+                        sketch == null ? storedEstimate : sketch.estimate(), EpochSeconds.toLocalDateTime(lastHit)));
+            }
+        }
+    }
+
+    /**
+     * Приращение счётчика: число обращений, скетч IP и время последнего обращения.
+     */
+    public static final class Delta {
+
+        private final HyperLogLog sketch;
+        private long hits;
+        private long lastHit = Long.MIN_VALUE;
+
+        private Delta(HyperLogLog sketch) {
+            this.sketch = sketch;
+        }
+
+        private void addHits(long count, long timestamp) {
+            hits += count;
+            lastHit = Math.max(lastHit, timestamp);
+        }
+
+        private void addIp(byte[] ip) {
+            sketch.add(ip);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.stats.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@Profile("!columnar")
+public class UriDictionaryRepository extends DictionaryRepository<String> {
+
+    public UriDictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                   @Value("${stats.dictionary.cache-size:100000}") int cacheSize) {
+        super(jdbcTemplate, "stats_uri_dictionary", "uri", "varchar", cacheSize);
+    }
+
+    @Override
+    protected String toSql(String key) {
+        return key;
+    }
+
+    @Override
+    protected String fromSql(String value) {
+        return value;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.repository.AggregateCoverageRepository;
+import ru.practicum.stats.repository.BitmapRepository;
+import ru.practicum.stats.repository.HitCompactionRepository;
+import ru.practicum.stats.repository.RollupRepository;
+import ru.practicum.stats.repository.SketchRepository;
+import ru.practicum.stats.repository.TopKRepository;
+import ru.practicum.stats.repository.UriCounterRepository;
+import ru.practicum.stats.storage.WritePermits;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+/**
+ * Достраивает производные таблицы по сырым обращениям. Включённая таблица без строки
+ * в stats_aggregate_coverage очищается начиная с границы уплотнения и считается полной
+ * с часа после последнего сохранённого обращения; затем достройка порциями по chunk сдвигает
+ * эту границу назад до самого раннего сырого обращения. У выключенной таблицы строка
+ * удаляется, после повторного включения таблица строится заново. Если уплотнение уже было,
+ * история до него из сырых обращений не восстанавливается: граница полноты останавливается
+ * на границе уплотнения, и запросы раньше неё отклоняются.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class AggregateBackfill {
+
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final RollupRepository rollupRepository;
+    private final TopKRepository topKRepository;
+    private final BitmapRepository bitmapRepository;
+    private final SketchRepository sketchRepository;
+    private final UriCounterRepository uriCounterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WritePermits writePermits;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Value("${stats.topk.enabled:true}")
+    private boolean topKEnabled;
+
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+
+    @Value("${stats.sketch.enabled:false}")
+    private boolean sketchEnabled;
+
+    @Value("${stats.counters.enabled:true}")
+    private boolean countersEnabled;
+
+    @Value("${stats.backfill.chunk:1h}")
+    private Duration chunk;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        transactionTemplate.executeWithoutResult(status -> {
+            aggregateCoverageRepository.lockExclusive();
+            Map<Aggregate, LocalDateTime> coverage = aggregateCoverageRepository.findCoverage();
+            for (Aggregate aggregate : Aggregate.values()) {
+                boolean enabled = isEnabled(aggregate);
+                if (enabled && !coverage.containsKey(aggregate)) {
+                    reset(aggregate);
+                } else if (enabled && aggregate == Aggregate.TOPK) {
+                    topKRepository.fillLevels();
+                } else if (!enabled && coverage.containsKey(aggregate)) {
+                    aggregateCoverageRepository.stop(aggregate);
+                    log.info("Агрегат {} выключен и после включения будет построен заново", aggregate.key());
+                }
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${stats.backfill.interval-ms:1000}")
+    public void backfill() {
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        aggregateCoverageRepository.findCoverage().forEach((aggregate, coveredFrom) -> {
+            if (!isEnabled(aggregate) || !needsBackfill(coveredFrom, watermark)) {
+                return;
+            }
+            try {
+                writePermits.run(() -> transactionTemplate.executeWithoutResult(status -> backfillChunk(aggregate)));
+            } catch (RuntimeException e) {
+                log.error("Не удалось достроить агрегат {}", aggregate.key(), e);
+            }
+        });
+    }
+
+    private void reset(Aggregate aggregate) {
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        switch (aggregate) {
+            case ROLLUP -> rollupRepository.deleteFrom(watermark);
+            case TOPK -> topKRepository.deleteFrom(watermark);
+            case BITMAP -> bitmapRepository.deleteFrom(watermark);
+            case SKETCH -> sketchRepository.deleteFrom(watermark);
+            // Счётчики не делятся по времени и строятся заново целиком
+            case COUNTERS -> uriCounterRepository.deleteAll();
+        }
+        LocalDateTime last = LocalDateTime.now(ZoneOffset.UTC);
+        Long maxTimestamp = hitCompactionRepository.findMaxTimestamp(Long.MAX_VALUE);
+        if (maxTimestamp != null && EpochSeconds.toLocalDateTime(maxTimestamp + 1).isAfter(last)) {
+            last = EpochSeconds.toLocalDateTime(maxTimestamp + 1);
+        }
+        LocalDateTime coveredFrom = TimeBucket.HOUR.ceil(last);
+        aggregateCoverageRepository.start(aggregate, coveredFrom);
+        log.info("Агрегат {} включён: полон с {}, более ранние обращения будут достроены", aggregate.key(),
+                coveredFrom);
+    }
+
+    private void backfillChunk(Aggregate aggregate) {
+        aggregateCoverageRepository.lockExclusive();
+        LocalDateTime coveredFrom = aggregateCoverageRepository.findCoveredFrom(aggregate);
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        if (!needsBackfill(coveredFrom, watermark)) {
+            return;
+        }
+        Long minTimestamp = hitCompactionRepository.findMinTimestamp(EpochSeconds.of(coveredFrom));
+        LocalDateTime lower = minTimestamp == null
+                ? coveredFrom
+                : TimeBucket.HOUR.floor(EpochSeconds.toLocalDateTime(minTimestamp));
+        if (watermark != null && lower.isBefore(watermark)) {
+            lower = watermark;
+        }
+        // Пустой промежуток до последнего более раннего обращения пропускается целиком
+        Long maxTimestamp = hitCompactionRepository.findMaxTimestamp(EpochSeconds.of(coveredFrom));
+        if (maxTimestamp != null) {
+            LocalDateTime upper = TimeBucket.HOUR.ceil(EpochSeconds.toLocalDateTime(maxTimestamp + 1));
+            if (upper.isBefore(coveredFrom)) {
+                coveredFrom = upper;
+            }
+        }
+        LocalDateTime from = coveredFrom.minus(chunk);
+        if (from.isBefore(lower)) {
+            from = lower;
+        }
+        if (from.isBefore(coveredFrom)) {
+            long fromTs = EpochSeconds.of(from);
+            long toTs = EpochSeconds.of(coveredFrom);
+            switch (aggregate) {
+                case ROLLUP -> rollupRepository.backfill(fromTs, toTs);
+                case TOPK -> topKRepository.backfill(fromTs, toTs);
+                case BITMAP -> bitmapRepository.backfill(fromTs, toTs);
+                case SKETCH -> sketchRepository.backfill(fromTs, toTs);
+                case COUNTERS -> uriCounterRepository.backfill(fromTs, toTs);
+            }
+        }
+        if (from.equals(lower)) {
+            aggregateCoverageRepository.setCoveredFrom(aggregate, watermark == null ? LocalDateTime.MIN : watermark);
+            log.info("Агрегат {} достроен{}", aggregate.key(),
+                    watermark == null ? "" : " до границы уплотнения " + watermark);
+        } else {
+            aggregateCoverageRepository.setCoveredFrom(aggregate, from);
+            log.debug("Агрегат {} достроен с {}", aggregate.key(), from);
+        }
+    }
+
+    private boolean isEnabled(Aggregate aggregate) {
+        return switch (aggregate) {
+            case ROLLUP -> rollupEnabled;
+            case TOPK -> topKEnabled;
+            case BITMAP -> bitmapEnabled;
+            case SKETCH -> sketchEnabled;
+            case COUNTERS -> countersEnabled;
+        };
+    }
+
+    // Граница полноты не опускается ниже границы уплотнения: сырых обращений раньше неё нет
+    private static boolean needsBackfill(LocalDateTime coveredFrom, LocalDateTime watermark) {
+        return !coveredFrom.equals(LocalDateTime.MIN) && !coveredFrom.equals(LocalDateTime.MAX)
+                && (watermark == null || coveredFrom.isAfter(watermark));
+    }
+}
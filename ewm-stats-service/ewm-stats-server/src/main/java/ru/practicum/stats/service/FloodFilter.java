@@ -0,0 +1,111 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.sketch.CountMinSketch;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Отсев потока обращений от одного IP к одному uri. Частота (ip, uri) оценивается count-min
+ * sketch по двум сменяющимся окнам: текущему и предыдущему, так что оценка покрывает от одного
+ * до двух окон. Сверх threshold обращения отбрасываются (DROP) или пропускаются с вероятностью
+ * 1 / sample-rate (SAMPLE). Память не зависит от числа IP и uri.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.flood.enabled", havingValue = "true")
+public class FloodFilter {
+
+    public enum Mode {
+        DROP,
+        SAMPLE
+    }
+
+    private final int width;
+    private final int depth;
+    private final long windowNanos;
+    private final long threshold;
+    private final Mode mode;
+    private final int sampleRate;
+    private final Counter dropped;
+
+    private volatile Windows windows;
+
+    public FloodFilter(MeterRegistry meterRegistry,
+                       @Value("${stats.flood.window:1m}") Duration window,
+                       @Value("${stats.flood.threshold:60}") long threshold,
+                       @Value("${stats.flood.mode:DROP}") Mode mode,
+                       @Value("${stats.flood.sample-rate:10}") int sampleRate,
+                       @Value("${stats.flood.width:65536}") int width,
+                       @Value("${stats.flood.depth:4}") int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.windowNanos = window.toNanos();
+        this.threshold = threshold;
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.windows = new Windows(new CountMinSketch(width, depth), new CountMinSketch(width, depth),
+                System.nanoTime());
+        this.dropped = Counter.builder("stats.flood.dropped")
+                .description("Обращения, отброшенные фильтром потока с одного IP")
+                .register(meterRegistry);
+        log.info("Фильтр потока обращений включён: window={}, threshold={}, mode={}", window, threshold, mode);
+    }
+
+    /**
+     * Учитывает обращение и решает, сохранять ли его.
+     */
+    public boolean admit(EndpointHitEntity hit) {
+        Windows current = rotateIfNeeded(System.nanoTime());
+        long hash = hash(hit);
+        long frequency = current.current().add(hash) + current.previous().estimate(hash);
+        if (frequency <= threshold
+                || mode == Mode.SAMPLE && ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private Windows rotateIfNeeded(long now) {
+        Windows current = windows;
+        if (now - current.startedAt() < windowNanos) {
+            return current;
+        }
+        synchronized (this) {
+            current = windows;
+            if (now - current.startedAt() >= windowNanos) {
+                // После простоя дольше окна предыдущее окно тоже устарело
+                CountMinSketch previous = now - current.startedAt() < 2 * windowNanos
+                        ? current.current()
+                        : new CountMinSketch(width, depth);
+                current = new Windows(new CountMinSketch(width, depth), previous, now);
+                windows = current;
+            }
+            return current;
+        }
+    }
+
+    private static long hash(EndpointHitEntity hit) {
+        byte[] ip = hit.getIp().getAddress();
+        byte[] uri = hit.getUri().getUri().getBytes(StandardCharsets.UTF_8);
+        return HyperLogLog.hash64(ByteBuffer.allocate(ip.length + 1 + uri.length)
+                .put(ip)
+                .put((byte) 0)
+                .put(uri)
+                .array());
+    }
+
+    private record Windows(CountMinSketch current, CountMinSketch previous, long startedAt) {
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.PartitionInterval;
+import ru.practicum.stats.model.TimeBucket;
+import ru.practicum.stats.repository.AggregateCoverageRepository;
+import ru.practicum.stats.repository.HitCompactionRepository;
+import ru.practicum.stats.repository.HitPartitionRepository;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Уплотнение старых обращений. Агрегаты ведутся при записи и достраиваются {@link AggregateBackfill},
+ * поэтому уплотнение сводится к сдвигу границы и удалению сырых строк раньше неё. Граница
+ * сдвигается, только если каждый ведущийся агрегат полон с текущей границы (или со всей истории,
+ * пока уплотнения не было): иначе удалённые обращения пропали бы из агрегатов. Проверка и сдвиг
+ * выполняются под исключительной блокировкой достройки. Затем целиком удаляются секции и остаток
+ * удаляется порциями по суткам. Запросы, которым нужны только сырые обращения (временные ряды,
+ * потоковая выгрузка уникальных), после этого отклоняются, если их период начинается раньше границы.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class HitCompaction {
+
+    private static final long DELETE_CHUNK_SECONDS = 86400;
+
+    private final HitCompactionRepository hitCompactionRepository;
+    private final HitPartitionRepository hitPartitionRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stats.compaction.after:0d}")
+    private Duration after;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+
+    @Value("${stats.counters.enabled:true}")
+    private boolean countersEnabled;
+
+    @Scheduled(cron = "${stats.compaction.cron:0 30 * * * *}")
+    public void compact() {
+        if (after.isZero() || after.isNegative()) {
+            return;
+        }
+        if (!rollupEnabled || !bitmapEnabled || !countersEnabled) {
+            log.warn("Уплотнение обращений пропущено: для него нужны stats.rollup.enabled, stats.bitmap.enabled " +
+                    "и stats.counters.enabled");
+            return;
+        }
+        LocalDateTime watermark = TimeBucket.HOUR.floor(LocalDateTime.now(ZoneOffset.UTC).minus(after));
+        LocalDateTime current = hitCompactionRepository.findWatermark();
+        if (current != null && !watermark.isAfter(current)) {
+            return;
+        }
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> advance(current, watermark)))) {
+            return;
+        }
+
+        for (String name : hitPartitionRepository.findPartitionNames()) {
+            LocalDate upperBound = PartitionInterval.upperBound(name);
+            if (upperBound != null && !upperBound.atStartOfDay().isAfter(watermark)) {
+                log.info("Удаление уплотнённой секции {}", name);
+                hitPartitionRepository.dropPartition(name);
+            }
+        }
+        long to = EpochSeconds.of(watermark);
+        Long from = hitCompactionRepository.findMinTimestamp(to);
+        long deleted = 0;
+        for (long chunk = from == null ? to : from; chunk < to; chunk += DELETE_CHUNK_SECONDS) {
+            deleted += hitCompactionRepository.deleteHits(chunk, Math.min(to, chunk + DELETE_CHUNK_SECONDS));
+        }
+        log.info("Обращения до {} уплотнены, удалено {} строк", watermark, deleted);
+    }
+
+    private boolean advance(LocalDateTime current, LocalDateTime watermark) {
+        aggregateCoverageRepository.lockExclusive();
+        Map<Aggregate, LocalDateTime> coverage = aggregateCoverageRepository.findCoverage();
+        LocalDateTime required = current == null ? LocalDateTime.MIN : current;
+        List<String> incomplete = coverage.entrySet().stream()
+                .filter(entry -> entry.getValue().isAfter(required))
+                .map(entry -> entry.getKey().key() + " с " + entry.getValue())
+                .toList();
+        if (!coverage.containsKey(Aggregate.ROLLUP) || !incomplete.isEmpty()) {
+            log.warn("Уплотнение обращений отложено: агрегаты ещё достраиваются {}", incomplete);
+            return false;
+        }
+        hitCompactionRepository.advanceWatermark(watermark);
+        return true;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.practicum.stats.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.exception.HitImportException;
+import ru.practicum.stats.model.AppEntity;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.HitImportResult;
+import ru.practicum.stats.model.UriEntity;
+import ru.practicum.stats.storage.HitStore;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Массовый импорт исторических обращений из NDJSON (можно сжатого gzip). Поток разбирается
+ * по одной записи и сохраняется пачками через {@link HitStore#importHits}, поэтому память
+ * не зависит от размера файла. Записи с пустыми полями или неверным IP пропускаются, записи
+ * раньше границы уплотнения не сохраняются и считаются в compacted.
+ * Каждая пачка фиксируется отдельно: при ошибке {@link HitImportException} сообщает, сколько
+ * первых записей потока уже сохранено, и повтор того же файла с skip, равным этому числу,
+ * продолжает импорт без повторного учёта. skip считает все записи, включая пропущенные.
+ * <p>
+ * Запись разбирается в {@link EndpointHitEntity}, но только как в объект-носитель: JPA его не
+ * видит, строки COPY кодируются из его полей напрямую. Он нужен, потому что в той же транзакции,
+ * что и COPY, по нему разрешаются id словарей для колонок app_id и uri_id и пополняются
+ * производные агрегаты; они, как и второе хранилище {@link HitStore}, принимают обращения
+ * только в этом виде, а агрегаты должны получить пачку вместе с сырыми строками, иначе
+ * граница их полноты и уплотнение разойдутся с данными.
+ */
+@Slf4j
+@Service
+public class HitImportService {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final HitStore hitStore;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public HitImportService(HitStore hitStore,
+                            ObjectMapper objectMapper,
+                            @Value("${stats.import.batch-size:5000}") int batchSize) {
+        this.hitStore = hitStore;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    public HitImportResult importHits(InputStream input, long skip) {
+        long position = 0;
+        long committed = 0;
+        long imported = 0;
+        long rejected = 0;
+        long accepted = 0;
+        List<EndpointHitEntity> batch = new ArrayList<>(batchSize);
+        try (MappingIterator<EndpointHitDto> records = objectMapper.readerFor(EndpointHitDto.class)
+                .readValues(decompress(input))) {
+            while (records.hasNextValue()) {
+                EndpointHitDto record = records.nextValue();
+                if (++position <= skip) {
+                    continue;
+                }
+                EndpointHitEntity hit = toEntity(record);
+                if (hit == null) {
+                    rejected++;
+                    continue;
+                }
+                batch.add(hit);
+                accepted++;
+                if (batch.size() == batchSize) {
+                    imported += flush(batch);
+                    committed = position;
+                }
+            }
+            imported += flush(batch);
+            committed = position;
+        } catch (JsonProcessingException e) {
+            throw new HitImportException(committed, imported, true, new IllegalArgumentException(
+                    "некорректный JSON в записи " + (position + 1) + ": " + e.getOriginalMessage()));
+        } catch (IOException | RuntimeException e) {
+            throw new HitImportException(committed, imported, false, e);
+        }
+        return new HitImportResult(Math.min(skip, position), imported, rejected, accepted - imported);
+    }
+
+    private int flush(List<EndpointHitEntity> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int stored = hitStore.importHits(batch);
+        log.debug("Импортирована пачка из {} обращений, раньше границы уплотнения {}", stored,
+                batch.size() - stored);
+        batch.clear();
+        return stored;
+    }
+
+    private static InputStream decompress(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, 64 * 1024);
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(buffered, 64 * 1024) : buffered;
+    }
+
+    private static EndpointHitEntity toEntity(EndpointHitDto dto) {
+        if (dto == null || isBlank(dto.getApp()) || isBlank(dto.getUri()) || isBlank(dto.getIp())
+                || dto.getTimestamp() == null) {
+            return null;
+        }
+        EndpointHitEntity entity = new EndpointHitEntity();
+        entity.setApp(AppEntity.builder().name(dto.getApp()).build());
+        entity.setUri(UriEntity.builder().uri(dto.getUri()).build());
+        try {
+            entity.setIp(InetAddresses.parse(dto.getIp()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        entity.setTimestamp(EpochSeconds.of(dto.getTimestamp()));
+        return entity;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
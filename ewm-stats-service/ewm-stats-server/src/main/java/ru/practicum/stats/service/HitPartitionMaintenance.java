@@ -0,0 +1,78 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.PartitionInterval;
+import ru.practicum.stats.repository.HitPartitionRepository;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Заранее создаёт секции таблицы hits и удаляет секции, целиком вышедшие за окно хранения,
+ * вместе со строками hits_default за тот же период. Границы секций считаются в UTC, как и ts.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class HitPartitionMaintenance {
+
+    private final HitPartitionRepository hitPartitionRepository;
+
+    @Value("${stats.partition.interval:DAY}")
+    private PartitionInterval interval;
+
+    @Value("${stats.partition.premake:3}")
+    private int premake;
+
+    @Value("${stats.partition.retention:0d}")
+    private Duration retention;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${stats.partition.cron:0 0 * * * *}")
+    public void maintain() {
+        createUpcoming();
+        if (!retention.isZero() && !retention.isNegative()) {
+            dropExpired();
+        }
+    }
+
+    private void createUpcoming() {
+        LocalDate from = interval.floor(LocalDate.now(ZoneOffset.UTC));
+        for (int i = 0; i <= premake; i++) {
+            try {
+                hitPartitionRepository.ensurePartition(from);
+            } catch (DataAccessException e) {
+                log.error("Не удалось создать секцию {}", interval.partitionName(from), e);
+            }
+            from = interval.next(from);
+        }
+    }
+
+    private void dropExpired() {
+        LocalDateTime threshold = LocalDateTime.now(ZoneOffset.UTC).minus(retention);
+        for (String name : hitPartitionRepository.findPartitionNames()) {
+            LocalDate upperBound = PartitionInterval.upperBound(name);
+            if (upperBound != null && !upperBound.atStartOfDay().isAfter(threshold)) {
+                log.info("Удаление секции {}, вышедшей за окно хранения {}", name, retention);
+                hitPartitionRepository.dropPartition(name);
+            }
+        }
+        int deleted = hitPartitionRepository.deleteDefaultBefore(
+                EpochSeconds.of(interval.floor(threshold.toLocalDate()).atStartOfDay()));
+        if (deleted > 0) {
+            log.info("Из hits_default удалено {} строк, вышедших за окно хранения {}", deleted, retention);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.storage.HitStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Копит обращения в ограниченной очереди и сохраняет их пачками:
+ * по достижении batch-size или через flush-interval после первого обращения в пачке.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.write-behind.enabled", havingValue = "true")
+public class HitWriteBehindBuffer {
+
+    private final HitStore hitStore;
+    private final BlockingQueue<EndpointHitEntity> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+    private final Timer flushTimer;
+    private final Counter failedHits;
+    private final Thread flusher;
+
+    private volatile boolean running;
+
+    public HitWriteBehindBuffer(HitStore hitStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats.write-behind.capacity:10000}") int capacity,
+                                @Value("${stats.write-behind.batch-size:500}") int batchSize,
+                                @Value("${stats.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                @Value("${stats.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.hitStore = hitStore;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+        this.flushTimer = Timer.builder("stats.write_behind.flush")
+                .description("Время сохранения одной пачки обращений")
+                .register(meterRegistry);
+        this.failedHits = Counter.builder("stats.write_behind.failed")
+                .description("Обращения, которые не удалось сохранить")
+                .register(meterRegistry);
+        Gauge.builder("stats.write_behind.queue.depth", queue, BlockingQueue::size)
+                .description("Обращения, ожидающие сохранения")
+                .register(meterRegistry);
+        this.flusher = new Thread(this::run, "stats-write-behind");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher.start();
+        log.info("Отложенная запись включена: batchSize={}, flushInterval={}", batchSize, flushInterval);
+    }
+
+    public boolean offer(EndpointHitEntity hit) {
+        return running && queue.offer(hit);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(shutdownTimeout.toMillis());
+        if (!queue.isEmpty()) {
+            log.warn("Не удалось сохранить {} обращений при остановке", queue.size());
+        }
+    }
+
+    private void run() {
+        List<EndpointHitEntity> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                EndpointHitEntity first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    EndpointHitEntity next = remaining > 0 && running
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<EndpointHitEntity> batch) {
+        try {
+            flushTimer.record(() -> hitStore.write(batch));
+            log.debug("Сохранена пачка из {} обращений", batch.size());
+        } catch (Exception e) {
+            failedHits.increment(batch.size());
+            log.error("Не удалось сохранить пачку из {} обращений", batch.size(), e);
+        }
+    }
+}
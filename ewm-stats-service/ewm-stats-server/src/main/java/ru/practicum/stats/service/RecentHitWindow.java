@@ -0,0 +1,178 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.storage.HitStoreListener;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики обращений за последние секунды в памяти: кольцо посекундных корзин, в каждой —
+ * LongAdder на (app, uri). Запрос обслуживается из памяти, только если весь интервал лежит
+ * внутри окна и после запуска сервера, а все обращения за эти секунды попали в кольцо.
+ * Время обращений — местное время основного сервиса, поэтому «сейчас» берётся в том же поясе.
+ * Обращения видны в хранилище с фиксации, а в кольце — только после onWrite, поэтому запрос,
+ * задевающий (секунду, uri) ещё не завершённой записи, отдаётся хранилищу.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.window.enabled", havingValue = "true")
+public class RecentHitWindow implements HitStoreListener {
+
+    private final Clock clock;
+    private final long size;
+    private final long slack;
+    private final long watermark;
+    private final AtomicReferenceArray<Bucket> ring;
+    // Секунды, обращения за которые не удалось учесть в кольце
+    private final ConcurrentSkipListSet<Long> missed = new ConcurrentSkipListSet<>();
+    // Число записей между beforeWrite и afterWrite по (секунда, uri)
+    private final Map<InFlightKey, Integer> inFlight = new ConcurrentHashMap<>();
+    private final Counter served;
+
+    @Autowired
+    public RecentHitWindow(MeterRegistry meterRegistry,
+                           @Value("${stats.window.size:1h}") Duration size,
+                           @Value("${stats.window.slack:1m}") Duration slack) {
+        this(meterRegistry, size, slack, Clock.systemDefaultZone());
+    }
+
+    RecentHitWindow(MeterRegistry meterRegistry, Duration size, Duration slack, Clock clock) {
+        this.clock = clock;
+        this.size = size.toSeconds();
+        this.slack = slack.toSeconds();
+        this.watermark = EpochSeconds.now(clock);
+        this.ring = new AtomicReferenceArray<>((int) (this.size + 2 * this.slack));
+        this.served = Counter.builder("stats.window.served")
+                .description("Запросы статистики, обслуженные из памяти")
+                .register(meterRegistry);
+        log.info("Окно последних обращений включено: size={}, slack={}", size, slack);
+    }
+
+    @Override
+    public void beforeWrite(List<EndpointHitEntity> hits) {
+        inFlightKeys(hits).forEach(key -> inFlight.merge(key, 1, Integer::sum));
+    }
+
+    @Override
+    public void afterWrite(List<EndpointHitEntity> hits) {
+        inFlightKeys(hits).forEach(key -> inFlight.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1));
+    }
+
+    @Override
+    public void onWrite(List<EndpointHitEntity> hits) {
+        long now = EpochSeconds.now(clock);
+        for (EndpointHitEntity hit : hits) {
+            long second = hit.getTimestamp();
+            if (second < watermark || second < now - size - slack) {
+                continue;
+            }
+            if (second > now + slack || !add(second, new SeriesKey(hit.getApp().getName(), hit.getUri().getUri()))) {
+                missed.add(second);
+            }
+        }
+    }
+
+    public Optional<List<ViewStatsDto>> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        long now = EpochSeconds.now(clock);
+        long from = EpochSeconds.ceil(start);
+        long to = EpochSeconds.of(end);
+        if (from < watermark || from < now - size || to > now + slack) {
+            return Optional.empty();
+        }
+        missed.headSet(now - size - slack).clear();
+        if (!missed.subSet(from, true, to, true).isEmpty()) {
+            return Optional.empty();
+        }
+
+        Set<String> wanted = uris == null || uris.isEmpty() ? null : new HashSet<>(uris);
+        for (InFlightKey key : inFlight.keySet()) {
+            if (key.second() >= from && key.second() <= to && (wanted == null || wanted.contains(key.uri()))) {
+                return Optional.empty();
+            }
+        }
+        Map<SeriesKey, Long> counts = new HashMap<>();
+        for (long second = from; second <= to; second++) {
+            Bucket bucket = ring.get(slot(second));
+            if (bucket == null || bucket.second != second) {
+                continue;
+            }
+            bucket.counts.forEach((key, adder) -> {
+                if (wanted == null || wanted.contains(key.uri())) {
+                    counts.merge(key, adder.sum(), Long::sum);
+                }
+            });
+        }
+        served.increment();
+
+        List<ViewStatsDto> stats = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> stats.add(new ViewStatsDto(key.app(), key.uri(), hits)));
+        stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return Optional.of(stats);
+    }
+
+    private boolean add(long second, SeriesKey key) {
+        int slot = slot(second);
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null && bucket.second == second) {
+                bucket.counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+                return true;
+            }
+            if (bucket != null && bucket.second > second) {
+                return false;
+            }
+            ring.compareAndSet(slot, bucket, new Bucket(second));
+        }
+    }
+
+    private static Set<InFlightKey> inFlightKeys(List<EndpointHitEntity> hits) {
+        Set<InFlightKey> keys = new HashSet<>();
+        for (EndpointHitEntity hit : hits) {
+            keys.add(new InFlightKey(hit.getTimestamp(), hit.getUri().getUri()));
+        }
+        return keys;
+    }
+
+    private int slot(long second) {
+        return (int) Math.floorMod(second, (long) ring.length());
+    }
+
+    private record SeriesKey(String app, String uri) {
+    }
+
+    private record InFlightKey(long second, String uri) {
+    }
+
+    private static final class Bucket {
+
+        private final long second;
+        private final Map<SeriesKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package ru.practicum.stats.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.storage.HitStoreListener;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Кэш ответов getStats. Границы интервала округляются до bucket, поэтому запросы,
+ * отличающиеся на несколько секунд, попадают в одну запись, а ответ считается за
+ * округлённый интервал. Новые обращения прибавляются к затронутым записям без unique,
+ * записи с unique сбрасываются. Записи кэша проиндексированы по uri, поэтому обращение
+ * проверяет только записи своего uri и записи без фильтра по uri.
+ * <p>
+ * Версии и число незавершённых записей ведутся по полосам uri. Прочитанное не кэшируется,
+ * только если во время чтения шла запись в одну из полос запроса: запись в другие uri
+ * кэшированию не мешает.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.cache.enabled", havingValue = "true")
+public class StatsResultCache implements HitStoreListener {
+
+    private static final int STRIPES = 1024;
+    // Последняя полоса общая для запросов без uris: её затрагивает любая запись
+    private static final int ALL_URIS = STRIPES;
+
+    private final long bucket;
+    private final Cache<Key, List<ViewStatsDto>> cache;
+    // Записи между beforeWrite и afterWrite: их обращения могут быть уже видны, но ещё не учтены в кэше
+    private final AtomicIntegerArray writesInFlight = new AtomicIntegerArray(STRIPES + 1);
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES + 1);
+    // Индекс меняется только внутри атомарных операций кэша над тем же ключом
+    private final Map<String, Set<Key>> keysByUri = new ConcurrentHashMap<>();
+    private final Set<Key> allUriKeys = ConcurrentHashMap.newKeySet();
+
+    public StatsResultCache(MeterRegistry meterRegistry,
+                            @Value("${stats.cache.bucket:1m}") Duration bucket,
+                            @Value("${stats.cache.max-size:1000}") long maxSize,
+                            @Value("${stats.cache.ttl:30s}") Duration ttl) {
+        this.bucket = bucket.toSeconds();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .<Key, List<ViewStatsDto>>evictionListener((key, stats, cause) -> unindex(key))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.result");
+        log.info("Кэш статистики включён: bucket={}, maxSize={}, ttl={}", bucket, maxSize, ttl);
+    }
+
+    public List<ViewStatsDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  boolean approx, BiFunction<LocalDateTime, LocalDateTime, List<ViewStatsDto>> loader) {
+        long from = Math.floorDiv(EpochSeconds.ceil(start), bucket) * bucket;
+        long to = Math.floorDiv(EpochSeconds.of(end), bucket) * bucket + bucket - 1;
+        Key key = new Key(from, to, uris == null ? Set.of() : Set.copyOf(uris), unique, approx);
+        List<ViewStatsDto> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return copy(cached);
+        }
+        int[] stripes = stripes(key);
+        // Версии читаются раньше числа записей в процессе: запись увеличивает их в обратном порядке
+        long[] versionsBefore = versions(stripes);
+        boolean cacheable = idle(stripes);
+        List<ViewStatsDto> stats = loader.apply(EpochSeconds.toLocalDateTime(from), EpochSeconds.toLocalDateTime(to));
+        // Запись, начатая до конца чтения, могла попасть или не попасть в ответ, а onWrite может
+        // прибавить её к записи кэша повторно, поэтому такой ответ не кэшируется
+        if (cacheable && Arrays.equals(versionsBefore, versions(stripes))) {
+            cache.asMap().compute(key, (k, old) -> {
+                index(k);
+                return copy(stats);
+            });
+            // Запись, начатая между проверкой и put, могла не застать эту запись кэша в onWrite
+            if (!Arrays.equals(versionsBefore, versions(stripes))) {
+                invalidate(key);
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void beforeWrite(List<EndpointHitEntity> hits) {
+        int[] stripes = stripes(hits);
+        for (int stripe : stripes) {
+            writesInFlight.incrementAndGet(stripe);
+        }
+        for (int stripe : stripes) {
+            versions.incrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public void afterWrite(List<EndpointHitEntity> hits) {
+        for (int stripe : stripes(hits)) {
+            writesInFlight.decrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public void onWrite(List<EndpointHitEntity> hits) {
+        Map<Key, Map<AppUri, Long>> added = new HashMap<>();
+        for (EndpointHitEntity hit : hits) {
+            AppUri appUri = new AppUri(hit.getApp().getName(), hit.getUri().getUri());
+            collect(keysByUri.getOrDefault(appUri.uri(), Set.of()), hit.getTimestamp(), appUri, added);
+            collect(allUriKeys, hit.getTimestamp(), appUri, added);
+        }
+        added.forEach((key, counts) -> {
+            if (key.unique()) {
+                invalidate(key);
+            } else {
+                // Ключ мог остаться в индексе после удаления записи: он убирается здесь же
+                cache.asMap().compute(key, (k, stats) -> {
+                    if (stats == null) {
+                        unindex(k);
+                        return null;
+                    }
+                    return increment(stats, counts);
+                });
+            }
+        });
+    }
+
+    private static void collect(Set<Key> keys, long timestamp, AppUri appUri, Map<Key, Map<AppUri, Long>> added) {
+        for (Key key : keys) {
+            if (key.covers(timestamp)) {
+                added.computeIfAbsent(key, k -> new HashMap<>()).merge(appUri, 1L, Long::sum);
+            }
+        }
+    }
+
+    private void invalidate(Key key) {
+        cache.asMap().compute(key, (k, stats) -> {
+            unindex(k);
+            return null;
+        });
+    }
+
+    private void index(Key key) {
+        if (key.uris().isEmpty()) {
+            allUriKeys.add(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            keysByUri.compute(uri, (u, keys) -> {
+                Set<Key> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                result.add(key);
+                return result;
+            });
+        }
+    }
+
+    private void unindex(Key key) {
+        if (key.uris().isEmpty()) {
+            allUriKeys.remove(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            keysByUri.computeIfPresent(uri, (u, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private long[] versions(int[] stripes) {
+        long[] result = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            result[i] = versions.get(stripes[i]);
+        }
+        return result;
+    }
+
+    private boolean idle(int[] stripes) {
+        for (int stripe : stripes) {
+            if (writesInFlight.get(stripe) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] stripes(Key key) {
+        if (key.uris().isEmpty()) {
+            return new int[]{ALL_URIS};
+        }
+        return key.uris().stream().mapToInt(StatsResultCache::stripe).distinct().toArray();
+    }
+
+    private static int[] stripes(List<EndpointHitEntity> hits) {
+        return IntStream.concat(hits.stream().mapToInt(hit -> stripe(hit.getUri().getUri())), IntStream.of(ALL_URIS))
+                .distinct()
+                .toArray();
+    }
+
+    private static int stripe(String uri) {
+        return Math.floorMod(uri.hashCode(), STRIPES);
+    }
+
+    private static List<ViewStatsDto> increment(List<ViewStatsDto> stats, Map<AppUri, Long> added) {
+        Map<AppUri, Long> counts = new LinkedHashMap<>();
+        stats.forEach(stat -> counts.put(new AppUri(stat.getApp(), stat.getUri()), stat.getHits()));
+        added.forEach((appUri, hits) -> counts.merge(appUri, hits, Long::sum));
+        List<ViewStatsDto> result = new ArrayList<>(counts.size());
+        counts.forEach((appUri, hits) -> result.add(new ViewStatsDto(appUri.app(), appUri.uri(), hits)));
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result;
+    }
+
+    private static List<ViewStatsDto> copy(List<ViewStatsDto> stats) {
+        return stats.stream()
+                .map(stat -> new ViewStatsDto(stat.getApp(), stat.getUri(), stat.getHits()))
+                .toList();
+    }
+
+    private record Key(long from, long to, Set<String> uris, boolean unique, boolean approx) {
+
+        private boolean covers(long timestamp) {
+            return timestamp >= from && timestamp <= to;
+        }
+    }
+
+    private record AppUri(String app, String uri) {
+    }
+}
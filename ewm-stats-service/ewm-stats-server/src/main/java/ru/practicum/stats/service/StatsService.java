@@ -2,36 +2,120 @@ package ru.practicum.stats.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.UriCounterDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.AppEntity;
 import ru.practicum.stats.model.EndpointHitEntity;
-import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.model.UriEntity;
+import ru.practicum.stats.storage.HitStore;
+import ru.practicum.stats.util.EpochSeconds;
+import ru.practicum.stats.util.InetAddresses;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class StatsService {
 
-    private final StatsRepository statsRepository;
+    private final HitStore hitStore;
+    private final Optional<HitWriteBehindBuffer> writeBehindBuffer;
+    private final Optional<RecentHitWindow> recentHitWindow;
+    private final Optional<StatsResultCache> statsResultCache;
+    private final UriChunkExecutor uriChunkExecutor;
+    private final Optional<FloodFilter> floodFilter;
 
-    @Transactional
     public void saveHit(EndpointHitDto endpointHitDto) {
-        EndpointHitEntity entity = new EndpointHitEntity();
-        entity.setApp(endpointHitDto.getApp());
-        entity.setUri(endpointHitDto.getUri());
-        entity.setIp(endpointHitDto.getIp());
-        entity.setTimestamp(endpointHitDto.getTimestamp());
-        statsRepository.save(entity);
-    }
-
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
-        if (unique) {
-            return statsRepository.findStatsUnique(start, end, uris);
-        } else {
-            return statsRepository.findStats(start, end, uris);
+        EndpointHitEntity entity = toEntity(endpointHitDto);
+        if (floodFilter.isPresent() && !floodFilter.get().admit(entity)) {
+            return;
+        }
+        if (writeBehindBuffer.isEmpty() || !writeBehindBuffer.get().offer(entity)) {
+            hitStore.write(List.of(entity));
+        }
+    }
+
+    public void saveHits(List<EndpointHitDto> endpointHitDtos) {
+        List<EndpointHitEntity> hits = endpointHitDtos.stream()
+                .map(this::toEntity)
+                .filter(hit -> floodFilter.isEmpty() || floodFilter.get().admit(hit))
+                .toList();
+        if (!hits.isEmpty()) {
+            hitStore.write(hits);
+        }
+    }
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       boolean approx) {
+        if (statsResultCache.isPresent()) {
+            return statsResultCache.get().get(start, end, uris, unique, approx,
+                    (from, to) -> findStats(from, to, uris, unique, approx));
+        }
+        return findStats(start, end, uris, unique, approx);
+    }
+
+    public List<ViewStatsDto> getTop(LocalDateTime start, LocalDateTime end, int k) {
+        return hitStore.findTop(start, end, k);
+    }
+
+    public List<UriCounterDto> getCounters(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return hitStore.findCounters(uris);
+        }
+        return uriChunkExecutor.execute(uris, hitStore::findCounters, UriCounterDto::getTotalHits);
+    }
+
+    public TimeSeriesDto getTimeSeries(String uri, LocalDateTime start, LocalDateTime end, Duration interval,
+                                       boolean unique) {
+        LocalDateTime from = EpochSeconds.toLocalDateTime(EpochSeconds.ceil(start));
+        return new TimeSeriesDto(uri, from, interval.toSeconds(), unique,
+                hitStore.timeSeries(uri, start, end, interval, unique));
+    }
+
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            Consumer<ViewStatsDto> consumer) {
+        hitStore.streamStats(start, end, uris, unique, consumer);
+    }
+
+    public void requireRawHits(LocalDateTime start) {
+        hitStore.requireRawHits(start);
+    }
+
+    public void exportHits(LocalDateTime start, LocalDateTime end, HitVisitor visitor) {
+        hitStore.streamHits(start, end, visitor);
+    }
+
+    private List<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        boolean approx) {
+        if (uris == null || uris.isEmpty()) {
+            return findChunk(start, end, uris, unique, approx);
+        }
+        return uriChunkExecutor.execute(uris, chunk -> findChunk(start, end, chunk, unique, approx), ViewStatsDto::getHits);
+    }
+
+    private List<ViewStatsDto> findChunk(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                         boolean approx) {
+        if (!unique && recentHitWindow.isPresent()) {
+            Optional<List<ViewStatsDto>> recent = recentHitWindow.get().findStats(start, end, uris);
+            if (recent.isPresent()) {
+                return recent.get();
+            }
         }
+        return hitStore.findStats(start, end, uris, unique, approx);
+    }
+
+    private EndpointHitEntity toEntity(EndpointHitDto endpointHitDto) {
+        EndpointHitEntity entity = new EndpointHitEntity();
+        entity.setApp(AppEntity.builder().name(endpointHitDto.getApp()).build());
+        entity.setUri(UriEntity.builder().uri(endpointHitDto.getUri()).build());
+        entity.setIp(InetAddresses.parse(endpointHitDto.getIp()));
+        entity.setTimestamp(EpochSeconds.of(endpointHitDto.getTimestamp()));
+        return entity;
     }
-}
\ No newline at end of file
+}
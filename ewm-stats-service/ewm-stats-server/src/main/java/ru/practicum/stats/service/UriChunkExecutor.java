@@ -0,0 +1,76 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Делит длинный список uris на части фиксированного размера, чтобы у запроса был один и тот же
+ * план, и выполняет части параллельно на ограниченном пуле. Части не пересекаются по uri,
+ * поэтому их результаты просто объединяются.
+ */
+@Component
+public class UriChunkExecutor {
+
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    public UriChunkExecutor(@Value("${stats.query.chunk-size:200}") int chunkSize,
+                            @Value("${stats.query.parallelism:4}") int parallelism,
+                            @Value("${stats.query.queue-capacity:100}") int queueCapacity) {
+        this.chunkSize = chunkSize;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stats-query-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Результаты частей объединяются и сортируются по убыванию hits.
+     */
+    public <T> List<T> execute(List<String> uris, Function<List<String>, List<T>> query, ToLongFunction<T> hits) {
+        List<String> distinct = uris.stream().distinct().toList();
+        if (distinct.size() <= chunkSize) {
+            return query.apply(distinct);
+        }
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<String> chunk = distinct.subList(from, Math.min(distinct.size(), from + chunkSize));
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(chunk), executor));
+        }
+        List<T> stats = new ArrayList<>();
+        try {
+            futures.forEach(future -> stats.addAll(future.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        stats.sort(Comparator.comparingLong(hits).reversed());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
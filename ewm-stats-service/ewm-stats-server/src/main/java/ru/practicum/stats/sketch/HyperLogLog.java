@@ -0,0 +1,174 @@
+package ru.practicum.stats.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Оценка числа различных значений с относительной ошибкой около 1.04 / sqrt(2^precision).
+ * Сериализуется в плотный (массив регистров) или разреженный (пары индекс-значение) вид —
+ * что короче.
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between "
+                    + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void add(byte[] value) {
+        addHash(hash64(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Сливает other в этот скетч и возвращает результат. Если точность other ниже,
+     * результатом будет новый скетч, свёрнутый до точности other.
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        HyperLogLog target = other.precision < precision ? fold(other.precision) : this;
+        HyperLogLog source = other.fold(target.precision);
+        for (int i = 0; i < target.registers.length; i++) {
+            if (source.registers[i] > target.registers[i]) {
+                target.registers[i] = source.registers[i];
+            }
+        }
+        return target;
+    }
+
+    public HyperLogLog fold(int targetPrecision) {
+        if (targetPrecision == precision) {
+            return this;
+        }
+        if (targetPrecision > precision) {
+            throw new IllegalArgumentException("Cannot fold a HyperLogLog to a higher precision");
+        }
+        HyperLogLog folded = new HyperLogLog(targetPrecision);
+        int shift = precision - targetPrecision;
+        int lowMask = (1 << shift) - 1;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] == 0) {
+                continue;
+            }
+            int low = i & lowMask;
+            int rank = low == 0
+                    ? registers[i] + shift
+                    : Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+            int index = i >>> shift;
+            if (rank > folded.registers[index]) {
+                folded.registers[index] = (byte) rank;
+            }
+        }
+        return folded;
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (nonZero * 3 >= registers.length) {
+            byte[] bytes = new byte[registers.length + 2];
+            bytes[0] = (byte) precision;
+            bytes[1] = DENSE;
+            System.arraycopy(registers, 0, bytes, 2, registers.length);
+            return bytes;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nonZero * 3 + 2);
+        out.write(precision);
+        out.write(SPARSE);
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != 0) {
+                out.write(i >>> 8);
+                out.write(i);
+                out.write(registers[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog hll = new HyperLogLog(bytes[0]);
+        if (bytes[1] == DENSE) {
+            System.arraycopy(bytes, 2, hll.registers, 0, hll.registers.length);
+        } else {
+            for (int i = 2; i + 2 < bytes.length; i += 3) {
+                int index = ((bytes[i] & 0xFF) << 8) | (bytes[i + 1] & 0xFF);
+                hll.registers[index] = bytes[i + 2];
+            }
+        }
+        return hll;
+    }
+
+    /**
+     * FNV-1a с финальным перемешиванием из MurmurHash3, чтобы старшие биты были равномерными.
+     */
+    public static long hash64(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package ru.practicum.stats.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving: не более capacity счётчиков; новый ключ при заполнении вытесняет минимальный
+ * и наследует его значение. Счётчики завышают частоту не больше чем на минимальный счётчик,
+ * а любой ключ с частотой выше N / capacity гарантированно присутствует.
+ */
+public class SpaceSaving {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::count)
+            .thenComparing(Entry::key);
+
+    private final int capacity;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byCount = new TreeSet<>(ORDER);
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void add(String key, long count) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            byCount.remove(entry);
+            put(new Entry(key, entry.count() + count));
+        } else if (entries.size() < capacity) {
+            put(new Entry(key, count));
+        } else {
+            Entry min = byCount.pollFirst();
+            entries.remove(min.key());
+            put(new Entry(key, min.count() + count));
+        }
+    }
+
+    /**
+     * Сливает две сводки: отсутствующий в заполненной сводке ключ мог иметь в ней частоту
+     * не больше её минимума, поэтому к нему прибавляется этот минимум.
+     */
+    public SpaceSaving merge(SpaceSaving other) {
+        long thisMissing = missingCount();
+        long otherMissing = other.missingCount();
+        Set<String> keys = new HashSet<>(entries.keySet());
+        keys.addAll(other.entries.keySet());
+        TreeSet<Entry> merged = new TreeSet<>(ORDER.reversed());
+        for (String key : keys) {
+            Entry mine = entries.get(key);
+            Entry theirs = other.entries.get(key);
+            merged.add(new Entry(key, (mine != null ? mine.count() : thisMissing)
+                    + (theirs != null ? theirs.count() : otherMissing)));
+        }
+        SpaceSaving result = new SpaceSaving(Math.max(capacity, other.capacity));
+        for (Entry entry : merged) {
+            if (result.entries.size() == result.capacity) {
+                break;
+            }
+            result.put(entry);
+        }
+        return result;
+    }
+
+    public List<Entry> top(int k) {
+        return byCount.descendingSet().stream()
+                .limit(k)
+                .toList();
+    }
+
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(capacity);
+            out.writeInt(entries.size());
+            for (Entry entry : byCount) {
+                out.writeUTF(entry.key());
+                out.writeLong(entry.count());
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            SpaceSaving summary = new SpaceSaving(in.readInt());
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                summary.put(new Entry(in.readUTF(), in.readLong()));
+            }
+            return summary;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long missingCount() {
+        return entries.size() < capacity ? 0 : byCount.first().count();
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.key(), entry);
+        byCount.add(entry);
+    }
+
+    public record Entry(String key, long count) {
+    }
+}
@@ -0,0 +1,142 @@
+package ru.practicum.stats.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Принимающий записи сегмент: строки держатся в памяти и дублируются в журнал,
+ * по которому сегмент восстанавливается после перезапуска.
+ */
+final class ActiveSegment implements Closeable {
+
+    private static final int RECORD_SIZE = 16;
+
+    private final Path journalPath;
+    private final FileChannel journal;
+    private final boolean syncWrites;
+    private final int capacity;
+    private long[] timestamps;
+    private int[] series;
+    private int[] ips;
+    private int size;
+
+    private ActiveSegment(Path journalPath, FileChannel journal, int capacity, boolean syncWrites) {
+        this.journalPath = journalPath;
+        this.journal = journal;
+        this.capacity = capacity;
+        this.syncWrites = syncWrites;
+        this.timestamps = new long[capacity];
+        this.series = new int[capacity];
+        this.ips = new int[capacity];
+    }
+
+    /**
+     * seriesCount и ipCount — размеры словарей: без sync-writes журнал мог попасть на диск раньше
+     * словарей, и записи со ссылками за их конец восстановить нельзя.
+     */
+    static ActiveSegment open(Path journalPath, int capacity, boolean syncWrites, int seriesCount, int ipCount)
+            throws IOException {
+        FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ActiveSegment segment = new ActiveSegment(journalPath, journal, capacity, syncWrites);
+        segment.recover(seriesCount, ipCount);
+        return segment;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] timestamps() {
+        return timestamps;
+    }
+
+    int[] series() {
+        return series;
+    }
+
+    int[] ips() {
+        return ips;
+    }
+
+    int remaining() {
+        return Math.max(0, capacity - size);
+    }
+
+    void append(long[] newTimestamps, int[] newSeries, int[] newIps, int from, int to) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate((to - from) * RECORD_SIZE);
+        for (int i = from; i < to; i++) {
+            records.putLong(newTimestamps[i]).putInt(newSeries[i]).putInt(newIps[i]);
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            journal.write(records);
+        }
+        if (syncWrites) {
+            journal.force(false);
+        }
+        for (int i = from; i < to; i++) {
+            add(newTimestamps[i], newSeries[i], newIps[i]);
+        }
+    }
+
+    void scan(long from, long to, RowConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            if (timestamps[i] >= from && timestamps[i] < to) {
+                consumer.accept(timestamps[i], series[i], ips[i]);
+            }
+        }
+    }
+
+    /**
+     * Удаляет журнал после того, как его строки запечатаны в сегмент.
+     */
+    void delete() throws IOException {
+        journal.close();
+        Files.delete(journalPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.force(true);
+        journal.close();
+    }
+
+    private void recover(int seriesCount, int ipCount) throws IOException {
+        long complete = journal.size() / RECORD_SIZE * RECORD_SIZE;
+        ByteBuffer records = ByteBuffer.allocate((int) complete);
+        journal.read(records, 0);
+        records.flip();
+        while (records.remaining() >= RECORD_SIZE) {
+            long timestamp = records.getLong();
+            int seriesId = records.getInt();
+            int ipId = records.getInt();
+            if (seriesId < 0 || seriesId >= seriesCount || ipId < 0 || ipId >= ipCount) {
+                complete = records.position() - RECORD_SIZE;
+                break;
+            }
+            add(timestamp, seriesId, ipId);
+        }
+        // Хвост неполной записи или записей со ссылками на потерянные значения словарей отбрасывается
+        journal.truncate(complete);
+        journal.position(complete);
+    }
+
+    private void add(long timestamp, int seriesId, int ipId) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            series = Arrays.copyOf(series, size * 2);
+            ips = Arrays.copyOf(ips, size * 2);
+        }
+        timestamps[size] = timestamp;
+        series[size] = seriesId;
+        ips[size] = ipId;
+        size++;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.repository.BitmapRepository;
+
+/**
+ * Периодически переносит пары (час, IP) из stats_ip_bitmap_deltas в битмапы, как
+ * {@link RollupBuffer} переносит приращения агрегатов.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@ConditionalOnProperty(name = "stats.bitmap.enabled", havingValue = "true", matchIfMissing = true)
+public class BitmapBuffer {
+
+    private final BitmapRepository bitmapRepository;
+    private final WritePermits writePermits;
+    private final int flushBatchSize;
+
+    public BitmapBuffer(BitmapRepository bitmapRepository, WritePermits writePermits,
+                        @Value("${stats.bitmap.flush-batch-size:10000}") int flushBatchSize) {
+        this.bitmapRepository = bitmapRepository;
+        this.writePermits = writePermits;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.bitmap.flush-interval-ms:10000}")
+    public void flush() {
+        try {
+            int merged;
+            do {
+                int[] rows = {0};
+                writePermits.run(() -> rows[0] = bitmapRepository.mergeStaged(flushBatchSize));
+                merged = rows[0];
+                if (merged > 0) {
+                    log.debug("Слиты приращения битмапов: {}", merged);
+                }
+            } while (merged == flushBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить приращения битмапов", e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ru.practicum.stats.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Кодирование колонок сегмента: время — дельты в zigzag-varint, идентификаторы — varint,
+ * затем каждая колонка сжимается deflate. В файле колонка хранится как
+ * [длина до сжатия][длина после сжатия][байты].
+ */
+final class ColumnCodec {
+
+    private ColumnCodec() {
+    }
+
+    static byte[] encodeTimestamps(long[] values, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 2);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            previous = values[i];
+        }
+        return frame(out.toByteArray());
+    }
+
+    static long[] decodeTimestamps(ByteBuffer column, int count) {
+        ByteBuffer raw = ByteBuffer.wrap(inflate(column));
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = readVarLong(raw);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    static byte[] encodeIds(int[] values, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 2);
+        for (int i = 0; i < count; i++) {
+            writeVarLong(out, values[i] & 0xFFFFFFFFL);
+        }
+        return frame(out.toByteArray());
+    }
+
+    static int[] decodeIds(ByteBuffer column, int count) {
+        ByteBuffer raw = ByteBuffer.wrap(inflate(column));
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) readVarLong(raw);
+        }
+        return values;
+    }
+
+    /**
+     * Длина колонки в файле вместе с заголовком, начиная с текущей позиции buffer.
+     */
+    static int frameLength(ByteBuffer buffer) {
+        return 8 + buffer.getInt(buffer.position() + 4);
+    }
+
+    private static byte[] frame(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return ByteBuffer.allocate(8 + compressed.size())
+                    .putInt(raw.length)
+                    .putInt(compressed.size())
+                    .put(compressed.toByteArray())
+                    .array();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer column) {
+        int rawLength = column.getInt(column.position());
+        int compressedLength = column.getInt(column.position() + 4);
+        ByteBuffer input = column.slice(column.position() + 8, compressedLength);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted segment column", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
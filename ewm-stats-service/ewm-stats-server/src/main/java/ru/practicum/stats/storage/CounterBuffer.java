@@ -0,0 +1,68 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.repository.UriCounterRepository;
+
+import java.util.List;
+
+/**
+ * Приращения счётчиков вставляются в uri_counter_deltas в транзакции записи обращений
+ * и периодически сливаются с uri_counters, поэтому запись обращений не блокирует строки
+ * популярных uri. В отличие от сводок топа приращения не держатся в памяти: уплотнение
+ * удаляет сырые обращения, опираясь на счётчики, и потерянное приращение не восстановить.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@ConditionalOnProperty(name = "stats.counters.enabled", havingValue = "true", matchIfMissing = true)
+public class CounterBuffer {
+
+    private final UriCounterRepository uriCounterRepository;
+    private final WritePermits writePermits;
+    private final int flushBatchSize;
+
+    public CounterBuffer(UriCounterRepository uriCounterRepository, WritePermits writePermits,
+                         @Value("${stats.counters.flush-batch-size:10000}") int flushBatchSize) {
+        this.uriCounterRepository = uriCounterRepository;
+        this.writePermits = writePermits;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    /**
+     * Вызывается в транзакции записи с обращениями, которые счётчики должны получить при записи.
+     */
+    public void add(List<EndpointHitEntity> hits) {
+        uriCounterRepository.stage(hits);
+    }
+
+    public List<UriCounterDto> findCounters(List<String> uris) {
+        return uriCounterRepository.findCounters(uris);
+    }
+
+    /**
+     * Разрешение на запись берётся на каждую порцию, чтобы долгий сброс не занимал его целиком.
+     */
+    @Scheduled(fixedDelayString = "${stats.counters.flush-interval-ms:10000}")
+    public void flush() {
+        try {
+            int merged;
+            do {
+                int[] rows = {0};
+                writePermits.run(() -> rows[0] = uriCounterRepository.mergeStaged(flushBatchSize));
+                merged = rows[0];
+                if (merged > 0) {
+                    log.debug("Слиты приращения счётчиков: {}", merged);
+                }
+            } while (merged == flushBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить приращения счётчиков", e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.stats.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Словарь с идентификаторами по порядку добавления; новые значения дописываются в файл
+ * до того, как на них сошлётся журнал или сегмент, а {@link #force()} сбрасывает их на диск.
+ */
+final class FileDictionary<K> implements Closeable {
+
+    private final FileChannel file;
+    private final Function<K, byte[]> encoder;
+    private final Map<K, Integer> ids = new HashMap<>();
+    private final List<K> values = new ArrayList<>();
+    private boolean dirty;
+
+    private FileDictionary(FileChannel file, Function<K, byte[]> encoder) {
+        this.file = file;
+        this.encoder = encoder;
+    }
+
+    static <K> FileDictionary<K> open(Path path, Function<K, byte[]> encoder, Function<byte[], K> decoder)
+            throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileDictionary<K> dictionary = new FileDictionary<>(file, encoder);
+        ByteBuffer content = ByteBuffer.allocate((int) file.size());
+        file.read(content, 0);
+        content.flip();
+        long complete = 0;
+        while (content.remaining() >= 4) {
+            int length = content.getInt();
+            if (content.remaining() < length) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            dictionary.remember(decoder.apply(bytes));
+            complete = content.position();
+        }
+        file.truncate(complete);
+        file.position(complete);
+        return dictionary;
+    }
+
+    synchronized int id(K value) throws IOException {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = encoder.apply(value);
+        ByteBuffer record = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+        while (record.hasRemaining()) {
+            file.write(record);
+        }
+        dirty = true;
+        return remember(value);
+    }
+
+    synchronized void force() throws IOException {
+        if (dirty) {
+            file.force(false);
+            dirty = false;
+        }
+    }
+
+    synchronized K get(int id) {
+        return values.get(id);
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    synchronized List<K> snapshot() {
+        return List.copyOf(values);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.force(true);
+        file.close();
+    }
+
+    private int remember(K value) {
+        int id = values.size();
+        values.add(value);
+        ids.put(value, id);
+        return id;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.practicum.stats.storage;
+
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.EndpointHitEntity;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface HitStore {
+
+    void write(List<EndpointHitEntity> hits);
+
+    /**
+     * Запись пачки исторических обращений при массовом импорте. Обращения — непривязанные
+     * к JPA носители: хранилище пишет их в обход сущностного слоя. Возвращает число записанных
+     * обращений: обращения раньше границы уплотнения хранилище не принимает.
+     */
+    int importHits(List<EndpointHitEntity> hits);
+
+    List<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                 boolean approx);
+
+    List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k);
+
+    List<UriCounterDto> findCounters(List<String> uris);
+
+    long[] timeSeries(String uri, LocalDateTime start, LocalDateTime end, Duration interval, boolean unique);
+
+    /**
+     * Передаёт строки статистики потребителю по мере чтения, не собирая весь результат в памяти.
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                     Consumer<ViewStatsDto> consumer);
+
+    /**
+     * Передаёт сырые обращения за период для выгрузки.
+     */
+    void streamHits(LocalDateTime start, LocalDateTime end, HitVisitor visitor);
+
+    /**
+     * Отклоняет период, сырые обращения за начало которого уже уплотнены.
+     */
+    default void requireRawHits(LocalDateTime start) {
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.stats.storage;
+
+import ru.practicum.stats.model.EndpointHitEntity;
+
+import java.util.List;
+
+/**
+ * Получает обращения после того, как хранилище их надёжно сохранило.
+ */
+public interface HitStoreListener {
+
+    /**
+     * Вызывается до того, как записываемые обращения могут стать видны читателям;
+     * за ним всегда следует afterWrite с теми же обращениями, даже если запись не удалась.
+     */
+    default void beforeWrite(List<EndpointHitEntity> hits) {
+    }
+
+    void onWrite(List<EndpointHitEntity> hits);
+
+    /**
+     * Вызывается после onWrite или после неудачной записи.
+     */
+    default void afterWrite(List<EndpointHitEntity> hits) {
+    }
+}
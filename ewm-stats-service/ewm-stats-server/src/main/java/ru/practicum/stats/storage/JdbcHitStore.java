@@ -0,0 +1,312 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.Aggregate;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.repository.AggregateCoverageRepository;
+import ru.practicum.stats.repository.AppDictionaryRepository;
+import ru.practicum.stats.repository.BitmapRepository;
+import ru.practicum.stats.repository.HitCompactionRepository;
+import ru.practicum.stats.repository.HitPartitionRepository;
+import ru.practicum.stats.repository.RollupRepository;
+import ru.practicum.stats.repository.SketchRepository;
+import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.repository.UriDictionaryRepository;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Component
+@Profile("!columnar")
+@RequiredArgsConstructor
+public class JdbcHitStore implements HitStore {
+
+    private static final DateTimeFormatter WATERMARK_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final StatsRepository statsRepository;
+    private final AppDictionaryRepository appDictionaryRepository;
+    private final UriDictionaryRepository uriDictionaryRepository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final BitmapRepository bitmapRepository;
+    private final Optional<TopKBuffer> topKBuffer;
+    private final Optional<CounterBuffer> counterBuffer;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final AggregateCoverageRepository aggregateCoverageRepository;
+    private final HitPartitionRepository hitPartitionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WritePermits writePermits;
+    private final List<HitStoreListener> listeners;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Value("${stats.sketch.enabled:false}")
+    private boolean sketchEnabled;
+
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+
+    // Секции создаются до транзакции записи, поэтому она начинается здесь, а не через @Transactional
+    @Override
+    public void write(List<EndpointHitEntity> hits) {
+        writePermits.run(() -> {
+            hitPartitionRepository.ensurePartitions(hits);
+            transactionTemplate.executeWithoutResult(status -> {
+                resolveDictionaries(hits);
+                statsRepository.saveAllInBatch(hits);
+                addDerived(hits);
+            });
+        });
+    }
+
+    @Override
+    public int importHits(List<EndpointHitEntity> hits) {
+        int[] imported = {0};
+        writePermits.run(() -> {
+            // Отбор до создания секций, чтобы не воссоздать уже удалённые уплотнением
+            List<EndpointHitEntity> retained = afterWatermark(hits);
+            if (retained.isEmpty()) {
+                return;
+            }
+            hitPartitionRepository.ensurePartitions(retained);
+            transactionTemplate.executeWithoutResult(status -> {
+                // Уплотнение сдвигает границу под исключительной блокировкой: здесь она уже не сдвинется
+                aggregateCoverageRepository.lockShared();
+                List<EndpointHitEntity> current = afterWatermark(retained);
+                if (current.isEmpty()) {
+                    return;
+                }
+                resolveDictionaries(current);
+                statsRepository.copyAll(current);
+                addDerived(current);
+                imported[0] = current.size();
+            });
+        });
+        return imported[0];
+    }
+
+    /**
+     * Обращения раньше границы уплотнения уже не попадут в агрегаты, а сырые строки за этот
+     * период удалены, поэтому такие обращения не записываются.
+     */
+    private List<EndpointHitEntity> afterWatermark(List<EndpointHitEntity> hits) {
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        if (watermark == null) {
+            return hits;
+        }
+        long from = EpochSeconds.of(watermark);
+        return hits.stream()
+                .filter(hit -> hit.getTimestamp() >= from)
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        boolean approx) {
+        if (unique && approx && sketchEnabled) {
+            requireCoverage(Aggregate.SKETCH, start);
+            return sketchRepository.findStatsUnique(start, end, uris);
+        } else if (unique && bitmapEnabled) {
+            requireCoverage(Aggregate.BITMAP, start);
+            return bitmapRepository.findStatsUnique(start, end, uris);
+        } else if (unique) {
+            requireRawHits(start);
+            return statsRepository.findStatsUnique(EpochSeconds.ceil(start), EpochSeconds.of(end), uris);
+        } else if (rollupEnabled) {
+            requireCoverage(Aggregate.ROLLUP, start);
+            return rollupRepository.findStats(start, end, uris);
+        } else {
+            requireRawHits(start);
+            return statsRepository.findStats(EpochSeconds.ceil(start), EpochSeconds.of(end), uris);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k) {
+        if (topKBuffer.isPresent() && k <= topKBuffer.get().getCapacity()) {
+            requireCoverage(Aggregate.TOPK, start);
+            return topKBuffer.get().findTop(start, end, k);
+        } else if (rollupEnabled) {
+            requireCoverage(Aggregate.ROLLUP, start);
+            return rollupRepository.findTop(start, end, k);
+        } else {
+            requireRawHits(start);
+            return statsRepository.findTopStats(EpochSeconds.ceil(start), EpochSeconds.of(end), Limit.of(k));
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UriCounterDto> findCounters(List<String> uris) {
+        if (counterBuffer.isPresent()
+                && aggregateCoverageRepository.findCoveredFrom(Aggregate.COUNTERS).equals(LocalDateTime.MIN)) {
+            return counterBuffer.get().findCounters(uris);
+        }
+        // Пока счётчики выключены или достраиваются, полны только сырые обращения без уплотнения
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        if (watermark != null) {
+            throw new IllegalArgumentException("Обращения до " + watermark.format(WATERMARK_FORMAT) +
+                    " уплотнены, а счётчики за всё время " + (counterBuffer.isPresent()
+                    ? "неполны: их достройка не может пройти границу уплотнения"
+                    : "не ведутся: нужен stats.counters.enabled"));
+        }
+        return statsRepository.findCounters(uris);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long[] timeSeries(String uri, LocalDateTime start, LocalDateTime end, Duration interval, boolean unique) {
+        requireRawHits(start);
+        return statsRepository.countByInterval(uri, EpochSeconds.ceil(start), EpochSeconds.of(end) + 1,
+                interval.toSeconds(), unique);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            Consumer<ViewStatsDto> consumer) {
+        // Битмапы и скетчи сливаются в памяти, поэтому уникальные считаются по сырым обращениям
+        if (!unique && rollupEnabled) {
+            requireCoverage(Aggregate.ROLLUP, start);
+            rollupRepository.streamStats(start, end, uris, consumer);
+            return;
+        }
+        requireRawHits(start);
+        try (Stream<ViewStatsDto> stats = unique
+                ? statsRepository.streamStatsUnique(EpochSeconds.ceil(start), EpochSeconds.of(end), uris)
+                : statsRepository.streamStats(EpochSeconds.ceil(start), EpochSeconds.of(end), uris)) {
+            stats.forEach(consumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamHits(LocalDateTime start, LocalDateTime end, HitVisitor visitor) {
+        requireRawHits(start);
+        statsRepository.streamHits(EpochSeconds.ceil(start), EpochSeconds.of(end), visitor);
+    }
+
+    /**
+     * Запросы только по сырым обращениям не должны захватывать уплотнённый период, иначе
+     * они молча занизят результат.
+     */
+    @Override
+    public void requireRawHits(LocalDateTime start) {
+        LocalDateTime watermark = hitCompactionRepository.findWatermark();
+        if (watermark != null && start.isBefore(watermark)) {
+            throw new IllegalArgumentException("Обращения до " + watermark.format(WATERMARK_FORMAT) +
+                    " уплотнены, для этого запроса start должен быть не раньше");
+        }
+    }
+
+    /**
+     * Период до начала полноты агрегата читается из сырых обращений, поэтому для него
+     * действует та же граница уплотнения.
+     */
+    private void requireCoverage(Aggregate aggregate, LocalDateTime start) {
+        if (start.isBefore(aggregateCoverageRepository.findCoveredFrom(aggregate))) {
+            requireRawHits(start);
+        }
+    }
+
+    /**
+     * Агрегаты получают только обращения не раньше начала своей полноты: более ранние
+     * добавит достройка. Разделяемая блокировка не даёт ей сдвинуть границу посреди записи.
+     */
+    private void addDerived(List<EndpointHitEntity> hits) {
+        aggregateCoverageRepository.lockShared();
+        Map<Aggregate, LocalDateTime> coverage = aggregateCoverageRepository.findCoverage();
+        List<EndpointHitEntity> rollupHits = covered(hits, coverage.get(Aggregate.ROLLUP));
+        if (rollupEnabled && !rollupHits.isEmpty()) {
+            rollupRepository.stage(rollupHits);
+        }
+        List<EndpointHitEntity> sketchHits = covered(hits, coverage.get(Aggregate.SKETCH));
+        if (sketchEnabled && !sketchHits.isEmpty()) {
+            sketchRepository.stage(sketchHits);
+        }
+        List<EndpointHitEntity> bitmapHits = covered(hits, coverage.get(Aggregate.BITMAP));
+        if (bitmapEnabled && !bitmapHits.isEmpty()) {
+            bitmapRepository.stage(bitmapHits);
+        }
+        List<EndpointHitEntity> topKHits = topKBuffer.isPresent()
+                ? covered(hits, coverage.get(Aggregate.TOPK))
+                : List.of();
+        List<EndpointHitEntity> counterHits = counterBuffer.isPresent()
+                ? covered(hits, coverage.get(Aggregate.COUNTERS))
+                : List.of();
+        if (!topKHits.isEmpty()) {
+            topKBuffer.get().add(topKHits);
+        }
+        if (!counterHits.isEmpty()) {
+            counterBuffer.get().add(counterHits);
+        }
+        if (!listeners.isEmpty()) {
+            // Обращения станут видны читателям при фиксации, поэтому слушатели узнают о записи заранее
+            listeners.forEach(listener -> listener.beforeWrite(hits));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    listeners.forEach(listener -> listener.onWrite(hits));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    listeners.forEach(listener -> listener.afterWrite(hits));
+                }
+            });
+        }
+    }
+
+    /**
+     * Обращения, которые агрегат с границей полноты coveredFrom должен получить при записи;
+     * null — агрегат не ведётся.
+     */
+    private static List<EndpointHitEntity> covered(List<EndpointHitEntity> hits, LocalDateTime coveredFrom) {
+        if (coveredFrom == null) {
+            return List.of();
+        }
+        if (coveredFrom.equals(LocalDateTime.MIN)) {
+            return hits;
+        }
+        long from = EpochSeconds.of(coveredFrom);
+        return hits.stream()
+                .filter(hit -> hit.getTimestamp() >= from)
+                .toList();
+    }
+
+    private void resolveDictionaries(List<EndpointHitEntity> hits) {
+        Map<String, Integer> appIds = appDictionaryRepository.resolve(hits.stream()
+                .map(hit -> hit.getApp().getName())
+                .distinct()
+                .toList());
+        Map<String, Integer> uriIds = uriDictionaryRepository.resolve(hits.stream()
+                .map(hit -> hit.getUri().getUri())
+                .distinct()
+                .toList());
+        for (EndpointHitEntity hit : hits) {
+            hit.getApp().setId(appIds.get(hit.getApp().getName()));
+            hit.getUri().setId(uriIds.get(hit.getUri().getUri()));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.repository.RollupRepository;
+
+/**
+ * Периодически переносит поминутные приращения из stats_rollup_deltas в корзины агрегатов,
+ * как {@link CounterBuffer} переносит приращения счётчиков. Запись обращений только вставляет
+ * приращения и не держит блокировки строк корзин популярного uri до фиксации.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@ConditionalOnProperty(name = "stats.rollup.enabled", havingValue = "true", matchIfMissing = true)
+public class RollupBuffer {
+
+    private final RollupRepository rollupRepository;
+    private final WritePermits writePermits;
+    private final int flushBatchSize;
+
+    public RollupBuffer(RollupRepository rollupRepository, WritePermits writePermits,
+                        @Value("${stats.rollup.flush-batch-size:10000}") int flushBatchSize) {
+        this.rollupRepository = rollupRepository;
+        this.writePermits = writePermits;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.rollup.flush-interval-ms:10000}")
+    public void flush() {
+        try {
+            int merged;
+            do {
+                int[] rows = {0};
+                writePermits.run(() -> rows[0] = rollupRepository.mergeStaged(flushBatchSize));
+                merged = rows[0];
+                if (merged > 0) {
+                    log.debug("Слиты приращения агрегатов: {}", merged);
+                }
+            } while (merged == flushBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить приращения агрегатов", e);
+        }
+    }
+}
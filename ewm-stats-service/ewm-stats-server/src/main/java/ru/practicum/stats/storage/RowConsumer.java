@@ -0,0 +1,7 @@
+package ru.practicum.stats.storage;
+
+@FunctionalInterface
+interface RowConsumer {
+
+    void accept(long timestamp, int series, int ip);
+}
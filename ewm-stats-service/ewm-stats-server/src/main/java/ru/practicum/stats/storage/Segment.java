@@ -0,0 +1,136 @@
+package ru.practicum.stats.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Запечатанный сегмент: строки отсортированы по времени, колонки сжаты, файл читается через mmap.
+ */
+final class Segment {
+
+    private static final int MAGIC = 0x45574D53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int timestampOffset;
+    private final int seriesOffset;
+    private final int ipOffset;
+
+    private Segment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a hit segment: " + path);
+        }
+        this.rowCount = buffer.getInt(8);
+        this.minTimestamp = buffer.getLong(12);
+        this.maxTimestamp = buffer.getLong(20);
+        this.timestampOffset = HEADER_SIZE;
+        this.seriesOffset = timestampOffset + ColumnCodec.frameLength(buffer.duplicate().position(timestampOffset));
+        this.ipOffset = seriesOffset + ColumnCodec.frameLength(buffer.duplicate().position(seriesOffset));
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static Segment write(Path path, long[] timestamps, int[] series, int[] ips, int count) throws IOException {
+        int[] order = IntStream.range(0, count)
+                .boxed()
+                .sorted((a, b) -> Long.compare(timestamps[a], timestamps[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        long[] sortedTimestamps = new long[count];
+        int[] sortedSeries = new int[count];
+        int[] sortedIps = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedTimestamps[i] = timestamps[order[i]];
+            sortedSeries[i] = series[order[i]];
+            sortedIps[i] = ips[order[i]];
+        }
+
+        byte[] timestampColumn = ColumnCodec.encodeTimestamps(sortedTimestamps, count);
+        byte[] seriesColumn = ColumnCodec.encodeIds(sortedSeries, count);
+        byte[] ipColumn = ColumnCodec.encodeIds(sortedIps, count);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(count)
+                .putLong(count == 0 ? 0 : sortedTimestamps[0])
+                .putLong(count == 0 ? 0 : sortedTimestamps[count - 1])
+                .flip();
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = {header, ByteBuffer.wrap(timestampColumn), ByteBuffer.wrap(seriesColumn),
+                    ByteBuffer.wrap(ipColumn)};
+            while (parts[parts.length - 1].hasRemaining()) {
+                channel.write(parts);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Пересекается ли сегмент с полуоткрытым интервалом [from, to).
+     */
+    boolean overlaps(long from, long to) {
+        return rowCount > 0 && minTimestamp < to && maxTimestamp >= from;
+    }
+
+    void scan(long from, long to, RowConsumer consumer) {
+        if (!overlaps(from, to)) {
+            return;
+        }
+        long[] timestamps = ColumnCodec.decodeTimestamps(buffer.duplicate().position(timestampOffset), rowCount);
+        int lo = lowerBound(timestamps, from);
+        int hi = lowerBound(timestamps, to);
+        if (lo >= hi) {
+            return;
+        }
+        int[] series = ColumnCodec.decodeIds(buffer.duplicate().position(seriesOffset), rowCount);
+        int[] ips = ColumnCodec.decodeIds(buffer.duplicate().position(ipOffset), rowCount);
+        for (int i = lo; i < hi; i++) {
+            consumer.accept(timestamps[i], series[i], ips[i]);
+        }
+    }
+
+    private static int lowerBound(long[] values, long key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
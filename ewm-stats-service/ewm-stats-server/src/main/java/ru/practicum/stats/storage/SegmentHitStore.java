@@ -0,0 +1,442 @@
+package ru.practicum.stats.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.UriCounterDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.export.HitVisitor;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Встроенное колоночное хранилище обращений без PostgreSQL. Записи копятся в активном
+ * сегменте с журналом, заполненный сегмент запечатывается в сжатый файл и читается через mmap.
+ * У каждого сегмента свой журнал с тем же номером: журнал, для которого сегмент уже есть,
+ * остался от остановки между запечатыванием и удалением журнала и не воспроизводится.
+ */
+@Slf4j
+@Component
+@Profile("columnar")
+@RequiredArgsConstructor
+public class SegmentHitStore implements HitStore {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final List<HitStoreListener> listeners;
+
+    @Value("${stats.columnar.directory:./stats-data}")
+    private Path directory;
+
+    @Value("${stats.columnar.segment-size:65536}")
+    private int segmentSize;
+
+    @Value("${stats.columnar.sync-writes:false}")
+    private boolean syncWrites;
+
+    private FileDictionary<SeriesKey> seriesDictionary;
+    private FileDictionary<InetAddress> ipDictionary;
+    private ActiveSegment active;
+    private int nextSegmentNumber;
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        seriesDictionary = FileDictionary.open(directory.resolve("series.dict"), SeriesKey::toBytes,
+                SeriesKey::fromBytes);
+        ipDictionary = FileDictionary.open(directory.resolve("ip.dict"), InetAddress::getAddress,
+                SegmentHitStore::toInetAddress);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                segments.add(Segment.open(path));
+                nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(path) + 1);
+            }
+        }
+        // Общий журнал прежнего формата становится журналом следующего сегмента
+        Path legacyJournal = directory.resolve("active.log");
+        if (Files.exists(legacyJournal)) {
+            Files.move(legacyJournal, segmentPath(nextSegmentNumber, JOURNAL_SUFFIX));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(path -> path.toString().endsWith(JOURNAL_SUFFIX)).toList()) {
+                if (segmentNumber(path) < nextSegmentNumber) {
+                    log.warn("Журнал {} уже запечатан в сегмент и удаляется", path.getFileName());
+                    Files.delete(path);
+                }
+            }
+        }
+        active = openJournal();
+        log.info("Колоночное хранилище {}: {} сегментов, {} строк в журнале", directory, segments.size(),
+                active.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            active.close();
+            seriesDictionary.close();
+            ipDictionary.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void write(List<EndpointHitEntity> hits) {
+        listeners.forEach(listener -> listener.beforeWrite(hits));
+        try {
+            append(hits);
+            listeners.forEach(listener -> listener.onWrite(hits));
+        } finally {
+            listeners.forEach(listener -> listener.afterWrite(hits));
+        }
+    }
+
+    private void append(List<EndpointHitEntity> hits) {
+        int count = hits.size();
+        long[] timestamps = new long[count];
+        int[] series = new int[count];
+        int[] ips = new int[count];
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                EndpointHitEntity hit = hits.get(i);
+                timestamps[i] = hit.getTimestamp();
+                series[i] = seriesDictionary.id(new SeriesKey(hit.getApp().getName(), hit.getUri().getUri()));
+                ips[i] = ipDictionary.id(hit.getIp());
+            }
+            // Новые значения словарей должны быть на диске раньше ссылающихся на них записей журнала
+            if (syncWrites) {
+                seriesDictionary.force();
+                ipDictionary.force();
+            }
+            int from = 0;
+            while (from < count) {
+                if (active.remaining() == 0) {
+                    seal();
+                }
+                int to = Math.min(count, from + active.remaining());
+                active.append(timestamps, series, ips, from, to);
+                from = to;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int importHits(List<EndpointHitEntity> hits) {
+        write(hits);
+        return hits.size();
+    }
+
+    // approx игнорируется: точный подсчёт по битмапам здесь не дороже оценки
+    @Override
+    public List<ViewStatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        boolean approx) {
+        long from = EpochSeconds.ceil(start);
+        long to = EpochSeconds.of(end) + 1;
+        List<Segment> sealed;
+        List<SeriesKey> seriesKeys;
+        Accumulator accumulator;
+        lock.readLock().lock();
+        try {
+            sealed = List.copyOf(segments);
+            seriesKeys = seriesDictionary.snapshot();
+            accumulator = new Accumulator(seriesKeys.size(), allowedSeries(seriesKeys, uris), unique);
+            active.scan(from, to, accumulator);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : sealed) {
+            segment.scan(from, to, accumulator);
+        }
+        return accumulator.toStats(seriesKeys);
+    }
+
+    @Override
+    public List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k) {
+        return findStats(start, end, null, false, false).stream()
+                .limit(k)
+                .toList();
+    }
+
+    @Override
+    public List<UriCounterDto> findCounters(List<String> uris) {
+        List<Segment> sealed;
+        List<SeriesKey> seriesKeys;
+        BitSet allowed;
+        long[] totals;
+        long[] lastHits;
+        RoaringBitmap[] ips;
+        RowConsumer consumer;
+        lock.readLock().lock();
+        try {
+            sealed = List.copyOf(segments);
+            seriesKeys = seriesDictionary.snapshot();
+            allowed = allowedSeries(seriesKeys, uris);
+            totals = new long[seriesKeys.size()];
+            lastHits = new long[seriesKeys.size()];
+            ips = new RoaringBitmap[seriesKeys.size()];
+            consumer = (timestamp, series, ip) -> {
+                if (allowed != null && !allowed.get(series)) {
+                    return;
+                }
+                totals[series]++;
+                lastHits[series] = Math.max(lastHits[series], timestamp);
+                if (ips[series] == null) {
+                    ips[series] = new RoaringBitmap();
+                }
+                ips[series].add(ip);
+            };
+            active.scan(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : sealed) {
+            segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+        }
+        List<UriCounterDto> counters = new ArrayList<>();
+        for (int i = 0; i < seriesKeys.size(); i++) {
+            if (totals[i] > 0) {
+                counters.add(new UriCounterDto(seriesKeys.get(i).app(), seriesKeys.get(i).uri(), totals[i],
+                        ips[i].getLongCardinality(), EpochSeconds.toLocalDateTime(lastHits[i])));
+            }
+        }
+        counters.sort(Comparator.comparing(UriCounterDto::getTotalHits).reversed());
+        return counters;
+    }
+
+    @Override
+    public long[] timeSeries(String uri, LocalDateTime start, LocalDateTime end, Duration interval, boolean unique) {
+        long from = EpochSeconds.ceil(start);
+        long to = EpochSeconds.of(end) + 1;
+        long step = interval.toSeconds();
+        int size = (int) ((to - from + step - 1) / step);
+        long[] counts = new long[size];
+        RoaringBitmap[] ips = unique ? new RoaringBitmap[size] : null;
+        BitSet allowed = allowedSeries(seriesDictionary.snapshot(), List.of(uri));
+        RowConsumer consumer = (timestamp, series, ip) -> {
+            if (!allowed.get(series)) {
+                return;
+            }
+            int index = (int) ((timestamp - from) / step);
+            if (ips == null) {
+                counts[index]++;
+            } else {
+                if (ips[index] == null) {
+                    ips[index] = new RoaringBitmap();
+                }
+                ips[index].add(ip);
+            }
+        };
+        List<Segment> sealed;
+        lock.readLock().lock();
+        try {
+            sealed = List.copyOf(segments);
+            active.scan(from, to, consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : sealed) {
+            segment.scan(from, to, consumer);
+        }
+        if (ips != null) {
+            for (int i = 0; i < size; i++) {
+                counts[i] = ips[i] == null ? 0 : ips[i].getLongCardinality();
+            }
+        }
+        return counts;
+    }
+
+    // Результат ограничен числом серий в словаре, который и так держится в памяти
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            Consumer<ViewStatsDto> consumer) {
+        findStats(start, end, uris, unique, false).forEach(consumer);
+    }
+
+    @Override
+    public void streamHits(LocalDateTime start, LocalDateTime end, HitVisitor visitor) {
+        long from = EpochSeconds.ceil(start);
+        long to = EpochSeconds.of(end) + 1;
+        RowConsumer consumer = (timestamp, series, ip) -> {
+            SeriesKey key = seriesDictionary.get(series);
+            visitor.accept(key.app(), key.uri(), ipDictionary.get(ip).getAddress(), timestamp);
+        };
+        // Активный сегмент копируется под блокировкой, чтобы медленный клиент выгрузки не задерживал запись
+        List<Segment> sealed;
+        long[] timestamps;
+        int[] series;
+        int[] ips;
+        int[] count = new int[1];
+        lock.readLock().lock();
+        try {
+            sealed = List.copyOf(segments);
+            timestamps = new long[active.size()];
+            series = new int[active.size()];
+            ips = new int[active.size()];
+            active.scan(from, to, (timestamp, seriesId, ip) -> {
+                timestamps[count[0]] = timestamp;
+                series[count[0]] = seriesId;
+                ips[count[0]] = ip;
+                count[0]++;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : sealed) {
+            segment.scan(from, to, consumer);
+        }
+        for (int i = 0; i < count[0]; i++) {
+            consumer.accept(timestamps[i], series[i], ips[i]);
+        }
+    }
+
+    private void seal() throws IOException {
+        seriesDictionary.force();
+        ipDictionary.force();
+        Path path = segmentPath(nextSegmentNumber, SEGMENT_SUFFIX);
+        Segment segment = Segment.write(path, active.timestamps(), active.series(), active.ips(), active.size());
+        segments.add(segment);
+        nextSegmentNumber++;
+        ActiveSegment sealed = active;
+        active = openJournal();
+        sealed.delete();
+        log.debug("Запечатан сегмент {} из {} строк", path.getFileName(), segment.getRowCount());
+    }
+
+    private ActiveSegment openJournal() throws IOException {
+        return ActiveSegment.open(segmentPath(nextSegmentNumber, JOURNAL_SUFFIX), segmentSize, syncWrites,
+                seriesDictionary.size(), ipDictionary.size());
+    }
+
+    private Path segmentPath(int number, String suffix) {
+        return directory.resolve(String.format("segment-%08d%s", number, suffix));
+    }
+
+    private static BitSet allowedSeries(List<SeriesKey> seriesKeys, List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        Set<String> wanted = new HashSet<>(uris);
+        BitSet allowed = new BitSet(seriesKeys.size());
+        for (int i = 0; i < seriesKeys.size(); i++) {
+            if (wanted.contains(seriesKeys.get(i).uri())) {
+                allowed.set(i);
+            }
+        }
+        return allowed;
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.lastIndexOf('.')));
+    }
+
+    private static InetAddress toInetAddress(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Accumulator implements RowConsumer {
+
+        private final BitSet allowed;
+        private final long[] counts;
+        private final RoaringBitmap[] ips;
+
+        private Accumulator(int seriesCount, BitSet allowed, boolean unique) {
+            this.allowed = allowed;
+            this.counts = unique ? null : new long[seriesCount];
+            this.ips = unique ? new RoaringBitmap[seriesCount] : null;
+        }
+
+        @Override
+        public void accept(long timestamp, int series, int ip) {
+            if (allowed != null && !allowed.get(series)) {
+                return;
+            }
+            if (counts != null) {
+                counts[series]++;
+            } else {
+                if (ips[series] == null) {
+                    ips[series] = new RoaringBitmap();
+                }
+                ips[series].add(ip);
+            }
+        }
+
+        private List<ViewStatsDto> toStats(List<SeriesKey> seriesKeys) {
+            List<ViewStatsDto> stats = new ArrayList<>();
+            for (int i = 0; i < seriesKeys.size(); i++) {
+                long hits = counts != null ? counts[i] : ips[i] == null ? 0 : ips[i].getLongCardinality();
+                if (hits > 0) {
+                    stats.add(new ViewStatsDto(seriesKeys.get(i).app(), seriesKeys.get(i).uri(), hits));
+                }
+            }
+            stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+            return stats;
+        }
+    }
+
+    private record SeriesKey(String app, String uri) {
+
+        private byte[] toBytes() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(app);
+                out.writeUTF(uri);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static SeriesKey fromBytes(byte[] bytes) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                return new SeriesKey(in.readUTF(), in.readUTF());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.repository.SketchRepository;
+
+/**
+ * Периодически переносит хеши IP из stats_hll_deltas в скетчи, как {@link RollupBuffer}
+ * переносит приращения агрегатов.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@ConditionalOnProperty(name = "stats.sketch.enabled", havingValue = "true")
+public class SketchBuffer {
+
+    private final SketchRepository sketchRepository;
+    private final WritePermits writePermits;
+    private final int flushBatchSize;
+
+    public SketchBuffer(SketchRepository sketchRepository, WritePermits writePermits,
+                        @Value("${stats.sketch.flush-batch-size:10000}") int flushBatchSize) {
+        this.sketchRepository = sketchRepository;
+        this.writePermits = writePermits;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.sketch.flush-interval-ms:10000}")
+    public void flush() {
+        try {
+            int merged;
+            do {
+                int[] rows = {0};
+                writePermits.run(() -> rows[0] = sketchRepository.mergeStaged(flushBatchSize));
+                merged = rows[0];
+                if (merged > 0) {
+                    log.debug("Слиты приращения скетчей: {}", merged);
+                }
+            } while (merged == flushBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить приращения скетчей", e);
+        }
+    }
+}
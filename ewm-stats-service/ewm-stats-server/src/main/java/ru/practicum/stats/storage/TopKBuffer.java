@@ -0,0 +1,76 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.repository.TopKRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Почасовые приращения сводок топа вставляются в stats_topk_deltas в транзакции записи
+ * обращений и периодически сливаются со сводками, как {@link CounterBuffer} сливает счётчики.
+ * Приращения не держатся в памяти: уплотнение удаляет сырые обращения, опираясь на сводки,
+ * и потерянное при аварийной остановке приращение уже не восстановить.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+@ConditionalOnProperty(name = "stats.topk.enabled", havingValue = "true", matchIfMissing = true)
+public class TopKBuffer {
+
+    private final TopKRepository topKRepository;
+    private final WritePermits writePermits;
+    private final int capacity;
+    private final int flushBatchSize;
+
+    public TopKBuffer(TopKRepository topKRepository, WritePermits writePermits,
+                      @Value("${stats.topk.capacity:1000}") int capacity,
+                      @Value("${stats.topk.flush-batch-size:10000}") int flushBatchSize) {
+        this.topKRepository = topKRepository;
+        this.writePermits = writePermits;
+        this.capacity = capacity;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Вызывается в транзакции записи с обращениями, которые сводки должны получить при записи.
+     */
+    public void add(List<EndpointHitEntity> hits) {
+        topKRepository.stage(hits);
+    }
+
+    public List<ViewStatsDto> findTop(LocalDateTime start, LocalDateTime end, int k) {
+        return topKRepository.findTop(start, end, k);
+    }
+
+    /**
+     * Разрешение на запись берётся на каждую порцию, чтобы долгий сброс не занимал его целиком.
+     */
+    @Scheduled(fixedDelayString = "${stats.topk.flush-interval-ms:10000}")
+    public void flush() {
+        try {
+            int merged;
+            do {
+                int[] rows = {0};
+                writePermits.run(() -> rows[0] = topKRepository.mergeStaged(flushBatchSize));
+                merged = rows[0];
+                if (merged > 0) {
+                    log.debug("Слиты приращения сводок топа: {}", merged);
+                }
+            } while (merged == flushBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить приращения сводок топа", e);
+        }
+    }
+}
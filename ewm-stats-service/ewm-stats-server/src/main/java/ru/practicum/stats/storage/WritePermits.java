@@ -0,0 +1,40 @@
+package ru.practicum.stats.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограничивает число соединений пула, одновременно занятых записью. Все записи — приём
+ * обращений, отложенная запись, импорт, достройка агрегатов и сброс сводок топа и счётчиков —
+ * берут разрешение здесь, поэтому чтениям всегда остаётся не меньше maximum-pool-size - max-connections
+ * соединений, за вычетом одного для фонового обслуживания секций и уплотнения.
+ */
+@Slf4j
+@Component
+@Profile("!columnar")
+public class WritePermits {
+
+    private final Semaphore permits;
+
+    public WritePermits(@Value("${stats.write.max-connections:4}") int maxConnections,
+                        @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (maxConnections <= 0 || maxConnections >= poolSize) {
+            throw new IllegalArgumentException("stats.write.max-connections должен быть от 1 до " + (poolSize - 1));
+        }
+        this.permits = new Semaphore(maxConnections, true);
+        log.info("Записи занимают не больше {} из {} соединений", maxConnections, poolSize);
+    }
+
+    public void run(Runnable write) {
+        permits.acquireUninterruptibly();
+        try {
+            write.run();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.stats.util;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Время обращений хранится в секундах эпохи; LocalDateTime трактуется как UTC.
+ * Сами обращения приходят в местном времени основного сервиса без пояса.
+ */
+public final class EpochSeconds {
+
+    private EpochSeconds() {
+    }
+
+    public static long of(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Текущее время clock в той же шкале, что и время обращений.
+     */
+    public static long now(Clock clock) {
+        return of(LocalDateTime.now(clock));
+    }
+
+    public static long ceil(LocalDateTime time) {
+        return of(time) + (time.getNano() > 0 ? 1 : 0);
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+}
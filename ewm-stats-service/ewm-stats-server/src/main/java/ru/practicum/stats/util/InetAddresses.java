@@ -0,0 +1,90 @@
+package ru.practicum.stats.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class InetAddresses {
+
+    private static final Pattern IPV4 = Pattern.compile("^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})$");
+    private static final Pattern HEX_GROUP = Pattern.compile("^[0-9a-fA-F]{1,4}$");
+    private static final int IPV6_GROUPS = 8;
+
+    private InetAddresses() {
+    }
+
+    /**
+     * Разбирает только IP-литералы: InetAddress.getByName для имени хоста выполнил бы DNS-запрос,
+     * поэтому строка сначала строго проверяется, а IPv6 с зоной (%eth0) не принимается.
+     */
+    public static InetAddress parse(String ip) {
+        String value = ip == null ? "" : ip.trim();
+        if (!isIpv4(value) && !isIpv6(value)) {
+            throw new IllegalArgumentException("Invalid ip: " + ip);
+        }
+        try {
+            return InetAddress.getByName(value);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid ip: " + ip);
+        }
+    }
+
+    private static boolean isIpv4(String value) {
+        Matcher matcher = IPV4.matcher(value);
+        if (!matcher.matches()) {
+            return false;
+        }
+        for (int i = 1; i <= 4; i++) {
+            if (Integer.parseInt(matcher.group(i)) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Группы по 1–4 шестнадцатеричные цифры, не больше одного «::», в конце допускается IPv4
+     * (::ffff:1.2.3.4), который занимает две группы.
+     */
+    private static boolean isIpv6(String value) {
+        int compressed = value.indexOf("::");
+        if (compressed >= 0 && value.indexOf("::", compressed + 1) >= 0) {
+            return false;
+        }
+        List<String> groups = new ArrayList<>();
+        if (compressed < 0) {
+            addGroups(value, groups);
+        } else {
+            addGroups(value.substring(0, compressed), groups);
+            if (!groups.isEmpty() && groups.get(groups.size() - 1).contains(".")) {
+                return false;
+            }
+            addGroups(value.substring(compressed + 2), groups);
+        }
+
+        int count = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            String group = groups.get(i);
+            if (i == groups.size() - 1 && group.contains(".")) {
+                if (!isIpv4(group)) {
+                    return false;
+                }
+                count += 2;
+            } else if (HEX_GROUP.matcher(group).matches()) {
+                count++;
+            } else {
+                return false;
+            }
+        }
+        return compressed >= 0 ? count < IPV6_GROUPS : count == IPV6_GROUPS;
+    }
+
+    private static void addGroups(String part, List<String> groups) {
+        if (!part.isEmpty()) {
+            groups.addAll(List.of(part.split(":", -1)));
+        }
+    }
+}
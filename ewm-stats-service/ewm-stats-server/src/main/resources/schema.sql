@@ -1,7 +1,181 @@
+CREATE TABLE IF NOT EXISTS stats_app_dictionary (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_uri_dictionary (
+    id SERIAL PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+);
+
 CREATE TABLE IF NOT EXISTS hits (
+    id BIGSERIAL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    ts BIGINT NOT NULL,
+    PRIMARY KEY (id, ts)
+) PARTITION BY RANGE (ts);
+
+CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
+
+CREATE TABLE IF NOT EXISTS stats_rollup_minute (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_hour (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_day (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_ts ON hits(ts);
+CREATE INDEX IF NOT EXISTS idx_hits_uri_ts ON hits(uri_id, ts);
+CREATE INDEX IF NOT EXISTS idx_rollup_minute_bucket ON stats_rollup_minute(bucket);
+CREATE INDEX IF NOT EXISTS idx_rollup_hour_bucket ON stats_rollup_hour(bucket);
+CREATE INDEX IF NOT EXISTS idx_rollup_day_bucket ON stats_rollup_day(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_deltas (
     id BIGSERIAL PRIMARY KEY,
-    app VARCHAR(255) NOT NULL,
-    uri VARCHAR(255) NOT NULL,
-    ip VARCHAR(255) NOT NULL,
-    timestamp TIMESTAMP NOT NULL
-);
\ No newline at end of file
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_rollup_deltas_bucket ON stats_rollup_deltas(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hll_hour (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_hll_day (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hll_hour_bucket ON stats_hll_hour(bucket);
+CREATE INDEX IF NOT EXISTS idx_hll_day_bucket ON stats_hll_day(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hll_deltas (
+    id BIGSERIAL PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hash BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_hll_deltas_bucket ON stats_hll_deltas(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_ip_dictionary (
+    id SERIAL PRIMARY KEY,
+    ip INET NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap_hour (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap_day (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ip_bitmap_hour_bucket ON stats_ip_bitmap_hour(bucket);
+CREATE INDEX IF NOT EXISTS idx_ip_bitmap_day_bucket ON stats_ip_bitmap_day(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap_deltas (
+    id BIGSERIAL PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    ip_id INTEGER NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ip_bitmap_deltas_bucket ON stats_ip_bitmap_deltas(bucket);
+
+CREATE TABLE IF NOT EXISTS stats_topk_hour (
+    bucket TIMESTAMP PRIMARY KEY,
+    summary BYTEA NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_topk_day (
+    bucket TIMESTAMP PRIMARY KEY,
+    summary BYTEA NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_topk_month (
+    bucket TIMESTAMP PRIMARY KEY,
+    summary BYTEA NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_topk_deltas (
+    id BIGSERIAL PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_topk_deltas_bucket ON stats_topk_deltas(bucket);
+
+CREATE TABLE IF NOT EXISTS uri_counters (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    total_hits BIGINT NOT NULL,
+    unique_ips_estimate BIGINT NOT NULL,
+    last_hit TIMESTAMP NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_uri_counters_uri ON uri_counters(uri_id);
+
+CREATE TABLE IF NOT EXISTS uri_counter_deltas (
+    id BIGSERIAL PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ips INET[] NOT NULL,
+    hits BIGINT NOT NULL,
+    last_hit TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_uri_counter_deltas_uri_app ON uri_counter_deltas(uri_id, app_id);
+
+CREATE TABLE IF NOT EXISTS stats_compaction (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    watermark TIMESTAMP NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_aggregate_coverage (
+    name VARCHAR(32) PRIMARY KEY,
+    covered_from TIMESTAMP
+);
@@ -0,0 +1,156 @@
+package ru.practicum.stats.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.model.RangePart;
+import ru.practicum.stats.model.TimeBucket;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangePlannerTest {
+
+    private static final List<TimeBucket> LEVELS = List.of(TimeBucket.DAY, TimeBucket.HOUR, TimeBucket.MINUTE);
+
+    @Test
+    void alignedRangeIsOneBucket() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 4, 0, 0);
+
+        assertEquals(List.of(new RangePart(TimeBucket.DAY, from, to)), RangePlanner.plan(from, to, LEVELS));
+    }
+
+    @Test
+    void unalignedRangeUsesCoarsestBucketsAndRawEdges() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 30);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 3, 5, 0, 20);
+
+        List<RangePart> parts = RangePlanner.plan(from, to, LEVELS);
+
+        assertEquals(List.of(
+                new RangePart(null, from, LocalDateTime.of(2026, 1, 1, 10, 16)),
+                new RangePart(TimeBucket.MINUTE, LocalDateTime.of(2026, 1, 1, 10, 16),
+                        LocalDateTime.of(2026, 1, 1, 11, 0)),
+                new RangePart(TimeBucket.HOUR, LocalDateTime.of(2026, 1, 1, 11, 0),
+                        LocalDateTime.of(2026, 1, 2, 0, 0)),
+                new RangePart(TimeBucket.DAY, LocalDateTime.of(2026, 1, 2, 0, 0),
+                        LocalDateTime.of(2026, 1, 3, 0, 0)),
+                new RangePart(TimeBucket.HOUR, LocalDateTime.of(2026, 1, 3, 0, 0),
+                        LocalDateTime.of(2026, 1, 3, 5, 0)),
+                new RangePart(null, LocalDateTime.of(2026, 1, 3, 5, 0), to)), parts);
+        assertContiguous(from, to, parts);
+    }
+
+    @Test
+    void rangeInsideOneMinuteIsRaw() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 10);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 1, 10, 15, 50);
+
+        assertEquals(List.of(new RangePart(null, from, to)), RangePlanner.plan(from, to, LEVELS));
+    }
+
+    @Test
+    void emptyRangeHasNoParts() {
+        LocalDateTime time = LocalDateTime.of(2026, 1, 1, 10, 0);
+
+        assertTrue(RangePlanner.plan(time, time, LEVELS).isEmpty());
+        assertTrue(RangePlanner.plan(time.plusHours(1), time, LEVELS).isEmpty());
+    }
+
+    @Test
+    void yearUsesMonthBuckets() {
+        List<TimeBucket> levels = List.of(TimeBucket.MONTH, TimeBucket.DAY, TimeBucket.HOUR);
+        LocalDateTime from = LocalDateTime.of(2025, 10, 18, 12, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 10, 18, 12, 0);
+
+        List<RangePart> parts = RangePlanner.plan(from, to, levels);
+
+        assertEquals(List.of(
+                new RangePart(TimeBucket.HOUR, from, LocalDateTime.of(2025, 10, 19, 0, 0)),
+                new RangePart(TimeBucket.DAY, LocalDateTime.of(2025, 10, 19, 0, 0),
+                        LocalDateTime.of(2025, 11, 1, 0, 0)),
+                new RangePart(TimeBucket.MONTH, LocalDateTime.of(2025, 11, 1, 0, 0),
+                        LocalDateTime.of(2026, 10, 1, 0, 0)),
+                new RangePart(TimeBucket.DAY, LocalDateTime.of(2026, 10, 1, 0, 0),
+                        LocalDateTime.of(2026, 10, 18, 0, 0)),
+                new RangePart(TimeBucket.HOUR, LocalDateTime.of(2026, 10, 18, 0, 0), to)), parts);
+        assertContiguous(from, to, parts);
+    }
+
+    @Test
+    void rawEdgesBeforeWatermarkBecomeFinestBuckets() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 30);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 1, 12, 30, 20);
+        LocalDateTime watermark = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+        List<RangePart> parts = RangePlanner.plan(from, to, LEVELS, watermark);
+
+        assertEquals(new RangePart(TimeBucket.MINUTE, LocalDateTime.of(2026, 1, 1, 10, 15),
+                LocalDateTime.of(2026, 1, 1, 10, 16)), parts.get(0));
+        assertEquals(new RangePart(null, LocalDateTime.of(2026, 1, 1, 12, 30), to), parts.get(parts.size() - 1));
+        assertTrue(parts.stream()
+                .filter(RangePart::isRaw)
+                .noneMatch(part -> part.from().isBefore(watermark)));
+    }
+
+    @Test
+    void rawEdgeCrossingWatermarkIsSplitAtIt() {
+        List<TimeBucket> hours = List.of(TimeBucket.HOUR);
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 20);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 1, 11, 40);
+        LocalDateTime watermark = LocalDateTime.of(2026, 1, 1, 11, 0);
+
+        List<RangePart> parts = RangePlanner.plan(from, to, hours, watermark);
+
+        assertEquals(List.of(
+                new RangePart(TimeBucket.HOUR, LocalDateTime.of(2026, 1, 1, 10, 0), watermark),
+                new RangePart(null, watermark, to)), parts);
+    }
+
+    @Test
+    void withoutWatermarkPlanIsUnchanged() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 30);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 3, 5, 0, 20);
+
+        assertEquals(RangePlanner.plan(from, to, LEVELS), RangePlanner.plan(from, to, LEVELS, null));
+    }
+
+    @Test
+    void rangeBeforeCoverageIsReadRaw() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 30);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 3, 5, 0, 20);
+        LocalDateTime coveredFrom = LocalDateTime.of(2026, 1, 2, 13, 0);
+
+        List<RangePart> parts = RangePlanner.plan(from, to, LEVELS, null, coveredFrom);
+
+        assertEquals(List.of(
+                new RangePart(null, from, coveredFrom),
+                new RangePart(TimeBucket.HOUR, coveredFrom, LocalDateTime.of(2026, 1, 3, 5, 0)),
+                new RangePart(null, LocalDateTime.of(2026, 1, 3, 5, 0), to)), parts);
+        assertContiguous(from, to, parts);
+    }
+
+    @Test
+    void uncoveredOrFullyCoveredRange() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 10, 15, 30);
+        LocalDateTime to = LocalDateTime.of(2026, 1, 3, 5, 0, 20);
+
+        assertEquals(List.of(new RangePart(null, from, to)),
+                RangePlanner.plan(from, to, LEVELS, null, LocalDateTime.MAX));
+        assertEquals(RangePlanner.plan(from, to, LEVELS),
+                RangePlanner.plan(from, to, LEVELS, null, LocalDateTime.MIN));
+        assertTrue(RangePlanner.plan(to, from, LEVELS, null, LocalDateTime.MAX).isEmpty());
+    }
+
+    private static void assertContiguous(LocalDateTime from, LocalDateTime to, List<RangePart> parts) {
+        LocalDateTime cursor = from;
+        for (RangePart part : parts) {
+            assertEquals(cursor, part.from());
+            assertTrue(part.from().isBefore(part.to()));
+            cursor = part.to();
+        }
+        assertEquals(to, cursor);
+    }
+}
@@ -0,0 +1,93 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.AppEntity;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.UriEntity;
+import ru.practicum.stats.util.EpochSeconds;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentHitWindowTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-18T12:00:00Z");
+
+    @Test
+    void servesLocalTimeHitsEastOfUtc() {
+        assertServesLocalTimeHits(ZoneId.of("Asia/Vladivostok"));
+    }
+
+    @Test
+    void servesLocalTimeHitsWestOfUtc() {
+        assertServesLocalTimeHits(ZoneId.of("America/Los_Angeles"));
+    }
+
+    @Test
+    void rejectsRangeOutsideWindow() {
+        Clock clock = Clock.fixed(NOW, ZoneId.of("Europe/Moscow"));
+        RecentHitWindow window = window(clock);
+        LocalDateTime now = LocalDateTime.now(clock);
+
+        assertTrue(window.findStats(now.minusHours(2), now, null).isEmpty());
+        assertTrue(window.findStats(now, now.plusMinutes(5), null).isEmpty());
+    }
+
+    @Test
+    void fallsBackToStoreWhileWriteIsUnfinished() {
+        Clock clock = Clock.fixed(NOW, ZoneId.of("Europe/Moscow"));
+        RecentHitWindow window = window(clock);
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<EndpointHitEntity> hits = hits(EpochSeconds.of(now), 2);
+
+        // Обращения уже зафиксированы в хранилище, но ещё не дошли до окна
+        window.beforeWrite(hits);
+        assertTrue(window.findStats(now, now, null).isEmpty());
+        assertTrue(window.findStats(now, now, List.of("/events/2")).isPresent());
+
+        window.onWrite(hits);
+        window.afterWrite(hits);
+        assertEquals(2, window.findStats(now, now, null).orElseThrow().get(0).getHits());
+    }
+
+    private static void assertServesLocalTimeHits(ZoneId zone) {
+        Clock clock = Clock.fixed(NOW, zone);
+        RecentHitWindow window = window(clock);
+        // Основной сервис ставит время через LocalDateTime.now() в своём поясе
+        LocalDateTime now = LocalDateTime.now(clock);
+        window.onWrite(hits(EpochSeconds.of(now), 3));
+
+        Optional<List<ViewStatsDto>> stats = window.findStats(now, now, null);
+
+        assertTrue(stats.isPresent());
+        assertEquals(1, stats.get().size());
+        assertEquals(3, stats.get().get(0).getHits());
+    }
+
+    private static RecentHitWindow window(Clock clock) {
+        return new RecentHitWindow(new SimpleMeterRegistry(), Duration.ofHours(1), Duration.ofMinutes(1), clock);
+    }
+
+    private static List<EndpointHitEntity> hits(long timestamp, int count) {
+        List<EndpointHitEntity> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            EndpointHitEntity hit = new EndpointHitEntity();
+            hit.setApp(AppEntity.builder().name("ewm-main-service").build());
+            hit.setUri(UriEntity.builder().uri("/events/1").build());
+            hit.setTimestamp(timestamp);
+            hits.add(hit);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.stats.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    @Test
+    void countsExactlyWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(1 << 16, 4);
+        for (int i = 0; i < 10; i++) {
+            for (int n = 0; n <= i; n++) {
+                sketch.add(hash("key-" + i));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, sketch.estimate(hash("key-" + i)));
+        }
+        assertEquals(0, sketch.estimate(hash("absent")));
+    }
+
+    @Test
+    void addReturnsEstimateIncludingThisOccurrence() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        long key = hash("ip");
+
+        assertEquals(1, sketch.add(key));
+        assertEquals(2, sketch.add(key));
+        assertEquals(2, sketch.estimate(key));
+    }
+
+    @Test
+    void neverUnderestimatesAndOverestimatesWithinBound() {
+        int width = 512;
+        int depth = 4;
+        CountMinSketch sketch = new CountMinSketch(width, depth);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        int total = 200_000;
+        for (int i = 0; i < total; i++) {
+            // Скошенное распределение: немногие ключи встречаются часто
+            long r = random.nextInt(1 << 16);
+            String key = "ip-" + (r * r >>> 16);
+            exact.merge(key, 1L, Long::sum);
+            sketch.add(hash(key));
+        }
+
+        long bound = 2L * total / width;
+        int exceeded = 0;
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(hash(entry.getKey()));
+            assertTrue(estimate >= entry.getValue(), entry.getKey());
+            if (estimate - entry.getValue() > bound) {
+                exceeded++;
+            }
+        }
+        assertTrue(exceeded <= exact.size() >> depth, "exceeded=" + exceeded + " of " + exact.size());
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws Exception {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        long key = hash("flood");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        sketch.add(key);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(80_000, sketch.estimate(key));
+    }
+
+    @Test
+    void rejectsNonPositiveDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(16, 0));
+    }
+
+    private static long hash(String key) {
+        return HyperLogLog.hash64(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
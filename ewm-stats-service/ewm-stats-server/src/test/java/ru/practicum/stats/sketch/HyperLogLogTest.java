@@ -0,0 +1,116 @@
+package ru.practicum.stats.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    private static final int PRECISION = 12;
+    // Три стандартные ошибки 1.04 / sqrt(2^12)
+    private static final double TOLERANCE = 3 * 1.04 / Math.sqrt(1 << PRECISION);
+
+    @Test
+    void estimateStaysWithinErrorBoundAtDefaultPrecision() {
+        for (int distinct : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog hll = new HyperLogLog(PRECISION);
+            for (int i = 0; i < distinct; i++) {
+                hll.add("10." + (i >>> 16) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF) + "#" + i);
+            }
+            double error = Math.abs(hll.estimate() - distinct) / (double) distinct;
+            assertTrue(error <= TOLERANCE, "distinct=" + distinct + ", estimate=" + hll.estimate());
+        }
+    }
+
+    @Test
+    void duplicatesDoNotChangeEstimate() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = 0; i < 500; i++) {
+            hll.add("ip-" + i);
+        }
+        long estimate = hll.estimate();
+        for (int repeat = 0; repeat < 10; repeat++) {
+            for (int i = 0; i < 500; i++) {
+                hll.add("ip-" + i);
+            }
+        }
+        assertEquals(estimate, hll.estimate());
+    }
+
+    @Test
+    void mergeEstimatesUnion() {
+        HyperLogLog left = new HyperLogLog(PRECISION);
+        HyperLogLog right = new HyperLogLog(PRECISION);
+        HyperLogLog union = new HyperLogLog(PRECISION);
+        for (int i = 0; i < 60_000; i++) {
+            left.add("ip-" + i);
+            union.add("ip-" + i);
+        }
+        for (int i = 40_000; i < 100_000; i++) {
+            right.add("ip-" + i);
+            union.add("ip-" + i);
+        }
+
+        HyperLogLog merged = left.merge(right);
+
+        assertEquals(union.estimate(), merged.estimate());
+        assertTrue(Math.abs(merged.estimate() - 100_000) <= 100_000 * TOLERANCE);
+    }
+
+    @Test
+    void mergeWithLowerPrecisionFoldsToIt() {
+        HyperLogLog precise = new HyperLogLog(14);
+        HyperLogLog coarse = new HyperLogLog(10);
+        for (int i = 0; i < 50_000; i++) {
+            (i % 2 == 0 ? precise : coarse).add("ip-" + i);
+        }
+
+        HyperLogLog merged = precise.merge(coarse);
+
+        assertEquals(10, merged.getPrecision());
+        assertTrue(Math.abs(merged.estimate() - 50_000) <= 50_000 * 3 * 1.04 / Math.sqrt(1 << 10));
+    }
+
+    @Test
+    void sparseFormPromotesToDenseAsRegistersFill() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = 0; i < 100; i++) {
+            hll.add("ip-" + i);
+        }
+        byte[] sparse = hll.toBytes();
+        assertEquals(1, sparse[1]);
+        assertTrue(sparse.length < (1 << PRECISION) + 2);
+
+        for (int i = 100; i < 20_000; i++) {
+            hll.add("ip-" + i);
+        }
+        byte[] dense = hll.toBytes();
+        assertEquals(0, dense[1]);
+        assertEquals((1 << PRECISION) + 2, dense.length);
+    }
+
+    @Test
+    void bytesRoundTripInBothForms() {
+        for (int distinct : new int[]{0, 50, 50_000}) {
+            HyperLogLog hll = new HyperLogLog(PRECISION);
+            for (int i = 0; i < distinct; i++) {
+                hll.add("ip-" + i);
+            }
+
+            HyperLogLog restored = HyperLogLog.fromBytes(hll.toBytes());
+
+            assertEquals(PRECISION, restored.getPrecision());
+            assertEquals(hll.estimate(), restored.estimate());
+            assertArrayEquals(hll.toBytes(), restored.toBytes());
+        }
+    }
+
+    @Test
+    void rejectsPrecisionOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MIN_PRECISION - 1));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.stats.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnCodecTest {
+
+    @Test
+    void timestampsRoundTripIncludingNegativeDeltas() {
+        long[] timestamps = {1_760_000_000L, 1_760_000_000L, 1_760_000_005L, 1_700_000_000L, 0L, -5L,
+                Long.MAX_VALUE, Long.MIN_VALUE, 42L};
+
+        byte[] column = ColumnCodec.encodeTimestamps(timestamps, timestamps.length);
+
+        assertArrayEquals(timestamps, ColumnCodec.decodeTimestamps(ByteBuffer.wrap(column), timestamps.length));
+    }
+
+    @Test
+    void idsRoundTripIncludingUnsignedRange() {
+        int[] ids = {0, 1, 127, 128, 16_384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+
+        byte[] column = ColumnCodec.encodeIds(ids, ids.length);
+
+        assertArrayEquals(ids, ColumnCodec.decodeIds(ByteBuffer.wrap(column), ids.length));
+    }
+
+    @Test
+    void encodesOnlyFirstCountValues() {
+        long[] timestamps = {10, 20, 30, 40};
+        int[] ids = {1, 2, 3, 4};
+
+        assertArrayEquals(new long[]{10, 20},
+                ColumnCodec.decodeTimestamps(ByteBuffer.wrap(ColumnCodec.encodeTimestamps(timestamps, 2)), 2));
+        assertArrayEquals(new int[]{1, 2},
+                ColumnCodec.decodeIds(ByteBuffer.wrap(ColumnCodec.encodeIds(ids, 2)), 2));
+    }
+
+    @Test
+    void columnsAreReadFromTheirOffsetInSharedBuffer() {
+        Random random = new Random(7);
+        int count = 10_000;
+        long[] timestamps = new long[count];
+        int[] series = new int[count];
+        long time = 1_760_000_000L;
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(3);
+            timestamps[i] = time;
+            series[i] = random.nextInt(500);
+        }
+        byte[] timestampColumn = ColumnCodec.encodeTimestamps(timestamps, count);
+        byte[] seriesColumn = ColumnCodec.encodeIds(series, count);
+        ByteBuffer file = ByteBuffer.allocate(3 + timestampColumn.length + seriesColumn.length)
+                .put(new byte[3])
+                .put(timestampColumn)
+                .put(seriesColumn);
+
+        assertEquals(timestampColumn.length, ColumnCodec.frameLength(file.duplicate().position(3)));
+        int seriesOffset = 3 + timestampColumn.length;
+        assertEquals(seriesColumn.length, ColumnCodec.frameLength(file.duplicate().position(seriesOffset)));
+        assertArrayEquals(timestamps, ColumnCodec.decodeTimestamps(file.duplicate().position(3), count));
+        assertArrayEquals(series, ColumnCodec.decodeIds(file.duplicate().position(seriesOffset), count));
+    }
+
+    @Test
+    void sortedTimestampsCompressWell() {
+        long[] timestamps = new long[65_536];
+        Arrays.fill(timestamps, 1_760_000_000L);
+        for (int i = 1; i < timestamps.length; i++) {
+            timestamps[i] = timestamps[i - 1] + (i % 10 == 0 ? 1 : 0);
+        }
+
+        assertTrue(ColumnCodec.encodeTimestamps(timestamps, timestamps.length).length < timestamps.length / 8);
+    }
+}
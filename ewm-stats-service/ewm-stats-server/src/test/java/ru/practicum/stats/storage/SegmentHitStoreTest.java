@@ -0,0 +1,135 @@
+package ru.practicum.stats.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.AppEntity;
+import ru.practicum.stats.model.EndpointHitEntity;
+import ru.practicum.stats.model.UriEntity;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentHitStoreTest {
+
+    private static final long START = 1_760_000_000L;
+    private static final LocalDateTime FROM = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sealedAndJournaledRowsSurviveRestart() throws IOException {
+        SegmentHitStore store = open();
+        store.write(hits(150));
+        store.close();
+
+        SegmentHitStore reopened = open();
+        try {
+            assertTrue(Files.exists(directory.resolve("segment-00000000.seg")));
+            assertStats(reopened, 150, 10);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void journalLeftBehindAfterSealIsNotReplayed() throws IOException {
+        SegmentHitStore store = open();
+        store.write(hits(150));
+        store.close();
+        // Остановка между запечатыванием сегмента и удалением его журнала
+        Path leftover = directory.resolve("segment-00000000.log");
+        try (ActiveSegment journal = ActiveSegment.open(leftover, 100, false, 1, 1)) {
+            long[] timestamps = new long[100];
+            int[] zeros = new int[100];
+            Arrays.fill(timestamps, START);
+            journal.append(timestamps, zeros, zeros, 0, 100);
+        }
+
+        SegmentHitStore reopened = open();
+        try {
+            assertFalse(Files.exists(leftover));
+            assertStats(reopened, 150, 10);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void journalRecordsPastDictionaryAreTruncated() throws IOException {
+        SegmentHitStore store = open();
+        store.write(hits(150));
+        store.close();
+        // Журнал попал на диск, а новые значения словарей — нет
+        Path journalPath = directory.resolve("segment-00000001.log");
+        long validSize = Files.size(journalPath);
+        try (ActiveSegment journal = ActiveSegment.open(journalPath, 100, false, 10, 50)) {
+            journal.append(new long[]{START, START}, new int[]{10, 0}, new int[]{0, 0}, 0, 2);
+        }
+
+        SegmentHitStore reopened = open();
+        try {
+            assertEquals(validSize, Files.size(journalPath));
+            assertStats(reopened, 150, 10);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void uniqueCountsDistinctIpsPerUri() throws IOException {
+        SegmentHitStore store = open();
+        try {
+            store.write(hits(150));
+
+            List<ViewStatsDto> stats = store.findStats(FROM, TO, List.of("/events/1"), true, false);
+
+            assertEquals(1, stats.size());
+            assertEquals(5, stats.get(0).getHits());
+        } finally {
+            store.close();
+        }
+    }
+
+    private SegmentHitStore open() throws IOException {
+        SegmentHitStore store = new SegmentHitStore(List.of());
+        ReflectionTestUtils.setField(store, "directory", directory);
+        ReflectionTestUtils.setField(store, "segmentSize", 100);
+        ReflectionTestUtils.setField(store, "syncWrites", true);
+        store.open();
+        return store;
+    }
+
+    private static void assertStats(SegmentHitStore store, long total, int uris) {
+        List<ViewStatsDto> stats = store.findStats(FROM, TO, null, false, false);
+        assertEquals(uris, stats.size());
+        assertEquals(total, stats.stream().mapToLong(ViewStatsDto::getHits).sum());
+    }
+
+    // uri = /events/(i % 10), ip = 10.0.0.(i % 50): у каждого uri пять разных адресов
+    private static List<EndpointHitEntity> hits(int count) throws IOException {
+        List<EndpointHitEntity> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            EndpointHitEntity hit = new EndpointHitEntity();
+            hit.setApp(AppEntity.builder().name("ewm-main-service").build());
+            hit.setUri(UriEntity.builder().uri("/events/" + i % 10).build());
+            hit.setIp(InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) (i % 50)}));
+            hit.setTimestamp(START + i);
+            hits.add(hit);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.stats.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeSortsRowsByTimeAndScanReturnsHalfOpenRange() throws IOException {
+        long[] timestamps = {50, 10, 40, 20, 30, 20};
+        int[] series = {5, 1, 4, 2, 3, 6};
+        int[] ips = {50, 10, 40, 20, 30, 60};
+        Path path = directory.resolve("segment-00000000.seg");
+
+        Segment segment = Segment.write(path, timestamps, series, ips, timestamps.length);
+
+        assertEquals(6, segment.getRowCount());
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+        List<long[]> rows = scan(segment, 20, 50);
+        assertEquals(4, rows.size());
+        long previous = Long.MIN_VALUE;
+        for (long[] row : rows) {
+            assertTrue(row[0] >= 20 && row[0] < 50);
+            assertTrue(row[0] >= previous);
+            // Строки не перемешиваются между колонками при сортировке
+            assertEquals(row[1] * 10, row[2]);
+            previous = row[0];
+        }
+    }
+
+    @Test
+    void reopenedSegmentReadsSameRows() throws IOException {
+        int count = 5_000;
+        long[] timestamps = new long[count];
+        int[] series = new int[count];
+        int[] ips = new int[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = 1_760_000_000L + (i * 7919L) % count;
+            series[i] = i % 13;
+            ips[i] = i;
+        }
+        Path path = directory.resolve("segment-00000001.seg");
+        Segment written = Segment.write(path, timestamps, series, ips, count);
+
+        Segment reopened = Segment.open(path);
+
+        assertEquals(count, reopened.getRowCount());
+        List<long[]> expected = scan(written, Long.MIN_VALUE, Long.MAX_VALUE);
+        List<long[]> actual = scan(reopened, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(List.of(expected.get(i)[0], expected.get(i)[1], expected.get(i)[2]),
+                    List.of(actual.get(i)[0], actual.get(i)[1], actual.get(i)[2]));
+        }
+        for (long[] row : actual) {
+            assertEquals(row[2] % 13, row[1]);
+        }
+    }
+
+    @Test
+    void overlapsUsesMinAndMaxTimestamp() throws IOException {
+        Segment segment = Segment.write(directory.resolve("segment-00000002.seg"),
+                new long[]{100, 200}, new int[]{0, 0}, new int[]{0, 0}, 2);
+
+        assertTrue(segment.overlaps(0, 101));
+        assertTrue(segment.overlaps(200, 300));
+        assertFalse(segment.overlaps(0, 100));
+        assertFalse(segment.overlaps(201, 300));
+        assertTrue(scan(segment, 201, 300).isEmpty());
+    }
+
+    @Test
+    void emptySegmentOverlapsNothing() throws IOException {
+        Segment segment = Segment.write(directory.resolve("segment-00000003.seg"),
+                new long[0], new int[0], new int[0], 0);
+
+        assertEquals(0, segment.getRowCount());
+        assertFalse(segment.overlaps(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void openRejectsForeignFile() throws IOException {
+        Path path = directory.resolve("segment-00000004.seg");
+        Files.write(path, new byte[64]);
+
+        assertThrows(IllegalStateException.class, () -> Segment.open(path));
+    }
+
+    private static List<long[]> scan(Segment segment, long from, long to) {
+        List<long[]> rows = new ArrayList<>();
+        segment.scan(from, to, (timestamp, series, ip) -> rows.add(new long[]{timestamp, series, ip}));
+        return rows;
+    }
+}
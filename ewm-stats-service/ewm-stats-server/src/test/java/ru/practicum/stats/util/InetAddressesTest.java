@@ -0,0 +1,54 @@
+package ru.practicum.stats.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InetAddressesTest {
+
+    @Test
+    void parsesIpv4Literals() {
+        assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 0, 1}, InetAddresses.parse("192.168.0.1").getAddress());
+        assertArrayEquals(new byte[]{0, 0, 0, 0}, InetAddresses.parse("0.0.0.0").getAddress());
+        assertArrayEquals(new byte[]{(byte) 255, (byte) 255, (byte) 255, (byte) 255},
+                InetAddresses.parse(" 255.255.255.255 ").getAddress());
+    }
+
+    @Test
+    void parsesIpv6Literals() {
+        for (String ip : List.of("2001:db8:0:0:0:0:0:1", "2001:db8::1", "::1", "::", "fe80::",
+                "1:2:3:4:5:6:1.2.3.4", "1:2:3:4:5:6:7::")) {
+            assertEquals(16, InetAddresses.parse(ip).getAddress().length, ip);
+        }
+        // IPv4, отображённый в IPv6, InetAddress возвращает как IPv4
+        assertEquals(InetAddresses.parse("10.0.0.1"), InetAddresses.parse("::ffff:10.0.0.1"));
+        assertEquals(InetAddresses.parse("2001:db8:0:0:0:0:0:1"), InetAddresses.parse("2001:DB8::1"));
+    }
+
+    @Test
+    void rejectsHostNamesWithoutLookup() {
+        for (String ip : List.of("localhost", "example.com", "1.2.3", "1.2.3.4.5", "01234.1.1.1", "")) {
+            assertThrows(IllegalArgumentException.class, () -> InetAddresses.parse(ip), ip);
+        }
+        assertThrows(IllegalArgumentException.class, () -> InetAddresses.parse(null));
+    }
+
+    @Test
+    void rejectsIpv4OctetsAbove255() {
+        for (String ip : List.of("256.0.0.1", "1.2.3.999", "::ffff:1.2.3.256")) {
+            assertThrows(IllegalArgumentException.class, () -> InetAddresses.parse(ip), ip);
+        }
+    }
+
+    @Test
+    void rejectsMalformedIpv6() {
+        for (String ip : List.of("1::2::3", "12345::1", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "g::1",
+                "fe80::1%eth0", "1.2.3.4::1", "::1.2.3.4:1", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:", "1:2:3:4:5:6:7:8::")) {
+            assertThrows(IllegalArgumentException.class, () -> InetAddresses.parse(ip), ip);
+        }
+    }
+}
@@ -23,7 +23,6 @@ import ru.practicum.ewm.repository.UserRepository;
 import ru.practicum.ewm.service.EventService;
 import ru.practicum.stats.client.StatsClient;
 import ru.practicum.stats.dto.EndpointHitDto;
-import ru.practicum.stats.dto.ViewStatsDto;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -439,17 +438,10 @@ public class EventServiceImpl implements EventService {
 
     private long getEventView(long eventId) {
         log.debug("Getting views for event ID: {}", eventId);
-        List<String> uris = List.of("/events/" + eventId);
+        String uri = "/events/" + eventId;
 
         try {
-            List<ViewStatsDto> stats = statsClient.getStats(
-                    LocalDateTime.now().minusYears(1),
-                    LocalDateTime.now(),
-                    uris,
-                    true
-            );
-
-            return stats.isEmpty() ? 0L : stats.get(0).getHits();
+            return statsClient.getViews(List.of(uri), true).getOrDefault(uri, 0L);
         } catch (Exception e) {
             log.warn("Failed to get stats for event {}: {}", eventId, e.getMessage());
             return 0L;
@@ -471,21 +463,10 @@ public class EventServiceImpl implements EventService {
                 .collect(Collectors.toList());
 
         try {
-            List<ViewStatsDto> stats = statsClient.getStats(
-                    LocalDateTime.now().minusYears(1),
-                    LocalDateTime.now(),
-                    uris,
-                    false
-            );
-
-            if (stats.isEmpty()) {
-                return new HashMap<>();
-            }
-
-            return stats.stream()
+            return statsClient.getViews(uris, false).entrySet().stream()
                     .collect(Collectors.toMap(
-                            stat -> extractEventIdFromUri(stat.getUri()),
-                            ViewStatsDto::getHits
+                            entry -> extractEventIdFromUri(entry.getKey()),
+                            Map.Entry::getValue
                     ));
         } catch (Exception e) {
             log.warn("Failed to get stats for events: {}", e.getMessage());